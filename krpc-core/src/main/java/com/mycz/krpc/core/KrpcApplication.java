@@ -1,26 +1,44 @@
 package com.mycz.krpc.core;
 
 import com.mycz.arch.common.util.StringKit;
+import com.mycz.krpc.core.capture.CaptureLog;
 import com.mycz.krpc.core.config.RpcConfig;
 import com.mycz.krpc.core.factory.ApplicationContext;
+import com.mycz.krpc.core.provider.RpcReferenceInvoke;
+import com.mycz.krpc.core.lifecycle.GracefulShutdown;
+import com.mycz.krpc.core.lifecycle.Readiness;
+import com.mycz.krpc.core.loadbalance.LoadBalancerFactory;
 import com.mycz.krpc.core.registry.ServiceDiscovery;
 import com.mycz.krpc.core.registry.ServiceRegistry;
 import com.mycz.krpc.core.registry.consul.ConsulServiceDiscovery;
 import com.mycz.krpc.core.registry.consul.ConsulServiceRegistry;
+import com.mycz.krpc.core.registry.entity.ServiceDiscoveryResult;
 import com.mycz.krpc.core.remoting.entity.RpcRequest;
+import com.mycz.krpc.core.remoting.transport.channel.Transport;
+import com.mycz.krpc.core.remoting.transport.channel.TransportFactory;
 import com.mycz.krpc.core.remoting.transport.client.NettyRpcClient;
-import com.mycz.krpc.core.remoting.transport.client.UnprocessedRequests;
+import com.mycz.krpc.core.remoting.transport.compress.CompressFactory;
 import com.mycz.krpc.core.remoting.transport.compress.gzip.GzipCompress;
 import com.mycz.krpc.core.remoting.transport.server.NettyRpcServer;
+import com.mycz.krpc.core.remoting.transport.server.dispatcher.Dispatcher;
+import com.mycz.krpc.core.remoting.transport.server.dispatcher.DispatcherFactory;
+import com.mycz.krpc.core.serializer.SerializerFactory;
 import com.mycz.krpc.core.serializer.kryo.KryoSerializer;
+import com.mycz.krpc.core.utils.RuntimeUtil;
+import com.mycz.krpc.core.warmup.WarmupRunner;
 
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 
 /**
  * 轻量高效的Java RPC微服务框架
  */
+@Slf4j
 public class KrpcApplication {
 
     /**
@@ -33,15 +51,52 @@ public class KrpcApplication {
     }
 
     /**
-     * 启动服务
+     * 启动服务, 并注册进程退出时的停机钩子
      */
     public void start() {
+        this.start(true);
+    }
+
+    /**
+     * 启动服务
+     *
+     * @param shutdownHook 是否注册进程退出时的停机钩子, 由容器管理生命周期并调用stop()时不需要注册
+     */
+    public void start(boolean shutdownHook) {
         // 1. 校验并填充配置项
         this.checkAndFillRpcConfig();
         // 2.
+        Readiness.require(Readiness.SERVER);
+        Readiness.require(Readiness.INVOKERS);
+        if (rpcConfig.getWarmup().getEnable()) {
+            Readiness.require(Readiness.WARMUP);
+        }
         this.initApplicationContext();
-        // 3. 启动服务
+        // 服务接口在启动前已登记完毕
+        Readiness.ready(Readiness.INVOKERS);
+        // 3. 启动服务, 端口绑定且所有就绪条件满足后注册
         new NettyRpcServer().start();
+        // 4. 预热, 完成后才注册
+        if (rpcConfig.getWarmup().getEnable()) {
+            new Thread(() -> {
+                try {
+                    new WarmupRunner().run();
+                } finally {
+                    Readiness.ready(Readiness.WARMUP);
+                }
+            }, "krpc-warmup").start();
+        }
+        // 5. 进程退出时按顺序排空后关闭
+        if (shutdownHook) {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "krpc-shutdown"));
+        }
+    }
+
+    /**
+     * 停止服务: 解除注册, 通知客户端, 停止读取新请求, 等待在途请求后关闭, 重复调用只执行一次, 后来的调用等待停机完成后返回
+     */
+    public void stop() {
+        GracefulShutdown.shutdown(rpcConfig.getServer().getShutdownTimeout());
     }
 
     /**
@@ -49,12 +104,26 @@ public class KrpcApplication {
      */
     public void initApplicationContext() {
         ApplicationContext.addInstance(RpcConfig.class, rpcConfig);
+        ApplicationContext.addInstance(Transport.class, TransportFactory.getTransport(rpcConfig.getTransport()));
+        if (rpcConfig.getCodec().getKryoRegistration()) {
+            KryoSerializer.registerClasses(this.loadClasses(rpcConfig.getCodec().getKryoClasses()));
+        }
         if (rpcConfig.getRegistry().getEnable()) {
             ApplicationContext.addInstance(ServiceRegistry.class, new ConsulServiceRegistry(rpcConfig.getRegistry().getAddress()));
-            ApplicationContext.addInstance(ServiceDiscovery.class, new ConsulServiceDiscovery(rpcConfig.getRegistry().getAddress()));
+            String snapshotFile = rpcConfig.getRegistry().getSnapshot() ? rpcConfig.getRegistry().getSnapshotFile() : null;
+            ApplicationContext.addInstance(ServiceDiscovery.class, new ConsulServiceDiscovery(rpcConfig.getRegistry().getAddress(), snapshotFile));
+        }
+        ApplicationContext.addInstance(Dispatcher.class, DispatcherFactory.create(rpcConfig.getServer()));
+        if (rpcConfig.getServer().getCapture()) {
+            RpcConfig.Server server = rpcConfig.getServer();
+            try {
+                ApplicationContext.addInstance(CaptureLog.class, new CaptureLog(server.getCaptureDir(),
+                        server.getCaptureSegmentSize() * 1024L * 1024, server.getCaptureSegments(), RpcReferenceInvoke.getMethodTable()));
+            } catch (IOException | RuntimeException e) {
+                log.error("*** krpc - 请求录制开启失败: {}", server.getCaptureDir(), e);
+            }
         }
         ApplicationContext.addInstance(NettyRpcClient.class, new NettyRpcClient());
-        ApplicationContext.addInstance(UnprocessedRequests.class, new UnprocessedRequests());
     }
 
     /**
@@ -71,6 +140,10 @@ public class KrpcApplication {
         if (rpcConfig.getPort() == null) {
             rpcConfig.setPort(0);
         }
+        if (StringKit.isBlank(rpcConfig.getTransport())) {
+            rpcConfig.setTransport("auto");
+        }
+        TransportFactory.check(rpcConfig.getTransport());
         if (StringKit.isBlank(rpcConfig.getName())) {
             throw new IllegalArgumentException("`krpc:name` 必填");
         }
@@ -93,7 +166,147 @@ public class KrpcApplication {
         if (StringKit.isBlank(registry.getServiceIP())) {
             registry.setServiceIP(rpcConfig.getHost());
         }
+        if (registry.getSnapshot() == null) {
+            registry.setSnapshot(true);
+        }
+        if (StringKit.isBlank(registry.getSnapshotFile())) {
+            registry.setSnapshotFile("krpc-discovery-" + rpcConfig.getName() + ".snapshot");
+        }
+        if (registry.getInitialWeight() == null || registry.getInitialWeight() <= 0) {
+            registry.setInitialWeight(10);
+        }
+        registry.setInitialWeight(Math.min(registry.getInitialWeight(), ServiceDiscoveryResult.DEFAULT_WEIGHT));
+        if (registry.getWarmupPeriod() == null || registry.getWarmupPeriod() < 0) {
+            registry.setWarmupPeriod(60000);
+        }
 
+        // 编解码
+        RpcConfig.Codec codec = rpcConfig.getCodec();
+        if (codec == null) {
+            codec = new RpcConfig.Codec();
+            rpcConfig.setCodec(codec);
+        }
+        if (StringKit.isBlank(codec.getSerializer())) {
+            codec.setSerializer("kryo");
+        }
+        SerializerFactory.getCodec(codec.getSerializer());
+        if (codec.getServiceSerializers() == null) {
+            codec.setServiceSerializers(new HashMap<>());
+        }
+        codec.getServiceSerializers().values().forEach(SerializerFactory::getCodec);
+        if (codec.getKryoRegistration() == null) {
+            codec.setKryoRegistration(false);
+        }
+        if (codec.getKryoClasses() == null) {
+            codec.setKryoClasses(new ArrayList<>());
+        }
+        if (StringKit.isBlank(codec.getCompress())) {
+            codec.setCompress("gzip");
+        }
+        CompressFactory.getType(codec.getCompress());
+        if (codec.getCompressThreshold() == null) {
+            codec.setCompressThreshold(0);
+        }
+
+        // 服务端
+        RpcConfig.Server server = rpcConfig.getServer();
+        if (server == null) {
+            server = new RpcConfig.Server();
+            rpcConfig.setServer(server);
+        }
+        if (StringKit.isBlank(server.getDispatch())) {
+            server.setDispatch("pool");
+        }
+        DispatcherFactory.check(server.getDispatch());
+        if (server.getThreads() == null || server.getThreads() <= 0) {
+            server.setThreads(Math.max(16, RuntimeUtil.cpus() * 2));
+        }
+        if (server.getMaxConcurrency() == null || server.getMaxConcurrency() <= 0) {
+            server.setMaxConcurrency(1024);
+        }
+        if (server.getQueueSize() == null || server.getQueueSize() <= 0) {
+            server.setQueueSize(10000);
+        }
+        if (server.getCapture() == null) {
+            server.setCapture(false);
+        }
+        if (StringKit.isBlank(server.getCaptureDir())) {
+            server.setCaptureDir("krpc-capture");
+        }
+        if (server.getCaptureSegmentSize() == null || server.getCaptureSegmentSize() <= 0) {
+            server.setCaptureSegmentSize(64);
+        } else if (server.getCaptureSegmentSize() > CaptureLog.MAX_SEGMENT_SIZE_MB) {
+            log.warn("*** krpc - 录制文件大小{}MB超过上限, 使用{}MB", server.getCaptureSegmentSize(), CaptureLog.MAX_SEGMENT_SIZE_MB);
+            server.setCaptureSegmentSize(CaptureLog.MAX_SEGMENT_SIZE_MB);
+        }
+        if (server.getCaptureSegments() == null || server.getCaptureSegments() <= 0) {
+            server.setCaptureSegments(4);
+        }
+        if (server.getShutdownTimeout() == null || server.getShutdownTimeout() < 0) {
+            server.setShutdownTimeout(10000);
+        }
+        if (server.getReusePort() == null) {
+            server.setReusePort(false);
+        }
+
+        // 客户端
+        RpcConfig.Client client = rpcConfig.getClient();
+        if (client == null) {
+            client = new RpcConfig.Client();
+            rpcConfig.setClient(client);
+        }
+        if (client.getMaxConnections() == null || client.getMaxConnections() <= 0) {
+            client.setMaxConnections(4);
+        }
+        if (client.getMaxPendingPerConnection() == null || client.getMaxPendingPerConnection() <= 0) {
+            client.setMaxPendingPerConnection(32);
+        }
+        if (client.getTimeout() == null || client.getTimeout() <= 0) {
+            client.setTimeout(5000);
+        }
+        if (StringKit.isBlank(client.getLoadBalance())) {
+            client.setLoadBalance("random");
+        }
+        LoadBalancerFactory.getLoadBalancer(client.getLoadBalance());
+        if (client.getServiceLoadBalances() == null) {
+            client.setServiceLoadBalances(new HashMap<>());
+        }
+        client.getServiceLoadBalances().values().forEach(LoadBalancerFactory::getLoadBalancer);
+
+        // 预热
+        RpcConfig.Warmup warmup = rpcConfig.getWarmup();
+        if (warmup == null) {
+            warmup = new RpcConfig.Warmup();
+            rpcConfig.setWarmup(warmup);
+        }
+        if (warmup.getEnable() == null) {
+            warmup.setEnable(true);
+        }
+        if (warmup.getIterations() == null || warmup.getIterations() < 0) {
+            warmup.setIterations(10000);
+        }
+        if (warmup.getDuration() == null || warmup.getDuration() < 0) {
+            warmup.setDuration(10000);
+        }
+        if (warmup.getMethods() == null) {
+            warmup.setMethods(new ArrayList<>());
+        }
+
+    }
+
+    /**
+     * 按全限定名加载类
+     */
+    private List<Class<?>> loadClasses(List<String> classNames) {
+        List<Class<?>> classes = new ArrayList<>();
+        for (String className : classNames) {
+            try {
+                classes.add(Class.forName(className.trim(), false, Thread.currentThread().getContextClassLoader()));
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("`krpc:codec:kryo-classes` 类不存在: " + className, e);
+            }
+        }
+        return classes;
     }
 
 
@@ -0,0 +1,16 @@
+package com.mycz.krpc.core.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 标注在接口方法参数上, 按该参数做一致性哈希路由, 相同取值的调用落到同一实例
+ * value为空时使用参数本身, 否则使用参数对象的属性, 如 @RouteKey("userId") 取 getUserId()
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RouteKey {
+
+    String value() default "";
+
+}
@@ -0,0 +1,364 @@
+package com.mycz.krpc.core.capture;
+
+import com.mycz.krpc.core.remoting.entity.RpcConstants;
+import com.mycz.krpc.core.utils.ThreadPoolFactoryUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * 请求流量录制: 把服务端收到的原始请求帧(消息头 + 消息体)连同时间戳追加到滚动的内存映射文件
+ * 写入只是一次内存拷贝, 由操作系统异步刷盘; 各IO线程通过CAS预留写入位置后并行拷贝, 不加锁;
+ * 下一个文件由后台线程提前创建并映射, 写满后直接切换, 刷盘和删除超出保留个数的旧文件也在后台线程执行, 不阻塞IO线程
+ * <p>
+ * 文件格式: magic(int) version(byte) 保留(3字节), 之后是连续的记录, 长度为0处结束
+ * 记录: 长度(int) 类型(byte) 时间戳微秒(long) 内容; 每个文件开头先写一条方法表记录, 回放时据此把方法id还原为方法签名
+ */
+@Slf4j
+public class CaptureLog implements Closeable {
+
+    static final int MAGIC = 0x4B43504C;
+
+    static final byte VERSION = 1;
+
+    static final int FILE_HEADER_LENGTH = 8;
+
+    static final int RECORD_HEADER_LENGTH = 13;
+
+    /**
+     * 记录类型: 请求帧
+     */
+    static final byte RECORD_FRAME = 1;
+
+    /**
+     * 记录类型: 方法表
+     */
+    static final byte RECORD_METHOD_TABLE = 2;
+
+    static final String FILE_PREFIX = "capture-";
+
+    static final String FILE_SUFFIX = ".log";
+
+    /**
+     * 单个文件最大大小(MB), 内存映射不能超过2GB
+     */
+    public static final int MAX_SEGMENT_SIZE_MB = 1024;
+
+    private final Path dir;
+
+    private final int segmentSize;
+
+    private final int maxSegments;
+
+    /**
+     * 方法表记录内容, 每个文件开头写一次
+     */
+    private final byte[] methodTable;
+
+    private final long startMillis = System.currentTimeMillis();
+
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * 后台线程: 预先映射下一个文件、刷盘、删除旧文件
+     */
+    private final ExecutorService roller = Executors.newSingleThreadExecutor(ThreadPoolFactoryUtil.createThreadFactory("krpc-capture", true));
+
+    /**
+     * 正在写入的文件
+     */
+    private volatile Segment active;
+
+    /**
+     * 预先映射好的下一个文件, 切换文件时在锁内访问
+     */
+    private CompletableFuture<Segment> next;
+
+    private int sequence;
+
+    private volatile boolean closed;
+
+    /**
+     * @param dir         录制目录
+     * @param segmentSize 单个文件大小(字节)
+     * @param maxSegments 保留的文件个数
+     * @param methodTable 方法表: 方法签名 -> 方法id
+     */
+    public CaptureLog(String dir, long segmentSize, int maxSegments, Map<String, Integer> methodTable) throws IOException {
+        this.methodTable = encodeMethodTable(methodTable);
+        if (segmentSize > (long) MAX_SEGMENT_SIZE_MB * 1024 * 1024 || segmentSize < FILE_HEADER_LENGTH + RECORD_HEADER_LENGTH + this.methodTable.length) {
+            throw new IllegalArgumentException("录制文件大小不合法: " + segmentSize);
+        }
+        this.dir = Path.of(dir);
+        this.segmentSize = (int) segmentSize;
+        this.maxSegments = maxSegments;
+        Files.createDirectories(this.dir);
+        this.switchTo(this.map(sequence++));
+        this.prepareNext(null);
+        log.info("*** krpc - 请求录制已开启: {}", this.dir.toAbsolutePath());
+    }
+
+    /**
+     * 录制一个帧, 只录制业务请求, 不改变帧的读位置
+     */
+    public void capture(ByteBuf frame) {
+        int index = frame.readerIndex();
+        int length = frame.readableBytes();
+        if (length < RpcConstants.HEAD_LENGTH || frame.getByte(index + 5) != RpcConstants.REQUEST_TYPE) {
+            return;
+        }
+        int size = RECORD_HEADER_LENGTH + length;
+        if (size > segmentSize - FILE_HEADER_LENGTH - RECORD_HEADER_LENGTH - methodTable.length) {
+            // 超过单个文件容量的帧不录制
+            return;
+        }
+        long timestamp = this.timestampMicros();
+        while (!closed) {
+            Segment segment = active;
+            int position = segment.reserve(size);
+            if (position >= 0) {
+                segment.write(position, RECORD_FRAME, timestamp, frame, index, length);
+                return;
+            }
+            // 当前文件已满, 切换后重新预留
+            if (!this.roll(segment)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        roller.shutdown();
+        try {
+            roller.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            active.buffer.force();
+            // 未用到的预备文件没有记录, 直接删除
+            Segment standby = next.getNow(null);
+            if (standby != null) {
+                try {
+                    Files.deleteIfExists(standby.file);
+                } catch (IOException e) {
+                    log.warn("*** krpc - 删除录制文件失败: {}", standby.file, e);
+                }
+            }
+        }
+    }
+
+    private long timestampMicros() {
+        return TimeUnit.MILLISECONDS.toMicros(startMillis) + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 切换到预先映射好的文件, 只在文件写满时进入, 多个线程同时写满时只切换一次
+     * 下一个文件还没有准备好时放弃本次录制
+     *
+     * @param full 已写满的文件
+     * @return 是否可以重新预留
+     */
+    private synchronized boolean roll(Segment full) {
+        if (closed) {
+            return false;
+        }
+        if (active != full) {
+            return true;
+        }
+        Segment segment = next.getNow(null);
+        if (segment == null) {
+            if (next.isCompletedExceptionally()) {
+                try {
+                    next.join();
+                } catch (CompletionException e) {
+                    log.warn("*** krpc - 请求录制失败, 停止录制", e.getCause());
+                }
+                closed = true;
+                roller.shutdown();
+            }
+            return false;
+        }
+        this.switchTo(segment);
+        // 其他线程可能仍在向上一个文件拷贝已预留的记录, 文件保持映射, 未赶上本次刷盘的内容由操作系统写回
+        this.prepareNext(full.buffer);
+        return true;
+    }
+
+    /**
+     * 先写方法表记录, 再开放给其他线程写入
+     */
+    private void switchTo(Segment segment) {
+        int position = segment.reserve(RECORD_HEADER_LENGTH + methodTable.length);
+        segment.write(position, RECORD_METHOD_TABLE, this.timestampMicros(), Unpooled.wrappedBuffer(methodTable), 0, methodTable.length);
+        active = segment;
+    }
+
+    /**
+     * 后台刷写上一个文件、删除超出保留个数的旧文件, 并映射下一个文件
+     */
+    private void prepareNext(MappedByteBuffer previous) {
+        int nextSequence = sequence++;
+        next = CompletableFuture.supplyAsync(() -> {
+            try {
+                if (previous != null) {
+                    previous.force();
+                }
+                this.deleteOldSegments();
+                return this.map(nextSequence);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, roller);
+    }
+
+    /**
+     * 创建并映射一个文件, 写入文件头
+     */
+    private Segment map(int sequence) throws IOException {
+        Path file = dir.resolve(String.format("%s%013d-%06d%s", FILE_PREFIX, startMillis, sequence, FILE_SUFFIX));
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        mapped.putInt(0, MAGIC);
+        mapped.put(4, VERSION);
+        return new Segment(file, mapped);
+    }
+
+    /**
+     * 删除旧文件, 连同正在写的文件保留maxSegments个, 此时下一个文件尚未创建
+     */
+    private void deleteOldSegments() throws IOException {
+        List<Path> segments = segments(dir);
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    /**
+     * 目录下的录制文件, 按录制先后排序
+     */
+    static List<Path> segments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+            }).sorted().toList();
+        }
+    }
+
+    /**
+     * 录制文件所属的录制批次, 即文件名中的开始时间(毫秒); 同一批次的时间戳连续, 不同批次之间不连续
+     */
+    static long run(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(FILE_PREFIX.length(), FILE_PREFIX.length() + 13));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 方法表编码: 个数(int) { 签名长度(short) 签名(utf-8) 方法id(int) }
+     */
+    private static byte[] encodeMethodTable(Map<String, Integer> methodTable) {
+        int length = 4;
+        for (String signature : methodTable.keySet()) {
+            length += 2 + signature.getBytes(StandardCharsets.UTF_8).length + 4;
+        }
+        ByteBuffer out = ByteBuffer.allocate(length);
+        out.putInt(methodTable.size());
+        methodTable.forEach((signature, id) -> {
+            byte[] bytes = signature.getBytes(StandardCharsets.UTF_8);
+            out.putShort((short) bytes.length);
+            out.put(bytes);
+            out.putInt(id);
+        });
+        return out.array();
+    }
+
+    /**
+     * 是否已准备好下一个文件, 供测试等待切换
+     */
+    synchronized boolean standbyReady() {
+        return next.isDone();
+    }
+
+    /**
+     * 已映射的文件, 只使用绝对位置读写, 不修改buffer的position, 多个线程可同时写入不同位置
+     */
+    private static class Segment {
+
+        private final Path file;
+
+        private final MappedByteBuffer buffer;
+
+        /**
+         * 下一条记录的写入位置
+         */
+        private final AtomicInteger position = new AtomicInteger(FILE_HEADER_LENGTH);
+
+        Segment(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        /**
+         * 预留一段空间
+         *
+         * @return 起始位置, 剩余空间不足时返回-1且不占用空间
+         */
+        int reserve(int size) {
+            while (true) {
+                int current = position.get();
+                if (current + size > buffer.capacity()) {
+                    return -1;
+                }
+                if (position.compareAndSet(current, current + size)) {
+                    return current;
+                }
+            }
+        }
+
+        /**
+         * 在预留的位置写一条记录
+         */
+        void write(int position, byte type, long timestamp, ByteBuf content, int index, int length) {
+            buffer.put(position + 4, type);
+            buffer.putLong(position + 5, timestamp);
+            content.getBytes(index, buffer.slice(position + RECORD_HEADER_LENGTH, length));
+            // 内容写完后再写长度, 读取时遇到长度为0即结束, 写到一半的记录不会被读到
+            buffer.putInt(position, length);
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+package com.mycz.krpc.core.capture;
+
+import com.mycz.krpc.core.remoting.entity.RpcMessage;
+import com.mycz.krpc.core.remoting.entity.RpcRequest;
+import com.mycz.krpc.core.remoting.transport.codec.RpcMessageDecoder;
+import com.mycz.krpc.core.utils.MethodSignatureUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 读取录制文件, 按录制先后依次返回请求帧
+ */
+@Slf4j
+public class CaptureReader {
+
+    private final Path dir;
+
+    public CaptureReader(String dir) {
+        this.dir = Path.of(dir);
+    }
+
+    /**
+     * 依次读取所有请求帧
+     */
+    public void forEach(Consumer<CapturedFrame> consumer) throws IOException {
+        for (Path segment : CaptureLog.segments(dir)) {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (buffer.remaining() < CaptureLog.FILE_HEADER_LENGTH || buffer.getInt() != CaptureLog.MAGIC || buffer.get() != CaptureLog.VERSION) {
+                log.warn("*** krpc - 录制文件格式不符, 忽略: {}", segment);
+                continue;
+            }
+            buffer.position(CaptureLog.FILE_HEADER_LENGTH);
+            long run = CaptureLog.run(segment);
+
+            Map<Integer, String> signatures = Map.of();
+            while (buffer.remaining() >= CaptureLog.RECORD_HEADER_LENGTH) {
+                int length = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining() - 9) {
+                    break;
+                }
+                byte type = buffer.get();
+                long timestamp = buffer.getLong();
+                ByteBuffer content = buffer.slice(buffer.position(), length);
+                buffer.position(buffer.position() + length);
+                if (type == CaptureLog.RECORD_METHOD_TABLE) {
+                    signatures = decodeMethodTable(content);
+                } else if (type == CaptureLog.RECORD_FRAME) {
+                    byte[] frame = new byte[length];
+                    content.get(frame);
+                    consumer.accept(new CapturedFrame(run, timestamp, frame, signatures));
+                }
+            }
+        }
+    }
+
+    /**
+     * 解码录制的请求, 方法id还原为方法签名, 供预热使用
+     *
+     * @param limit 最多读取的请求数
+     */
+    public List<RpcRequest> requests(int limit) throws IOException {
+        return this.requests(limit, signature -> true);
+    }
+
+    /**
+     * 解码录制的请求, 只保留方法签名满足条件的请求
+     *
+     * @param limit  最多读取的请求数
+     * @param filter 方法签名过滤条件
+     */
+    public List<RpcRequest> requests(int limit, Predicate<String> filter) throws IOException {
+        List<RpcRequest> requests = new ArrayList<>();
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcMessageDecoder());
+        try {
+            this.forEach(frame -> {
+                if (requests.size() >= limit) {
+                    return;
+                }
+                channel.writeInbound(Unpooled.wrappedBuffer(frame.getFrame()));
+                Object msg = channel.readInbound();
+                if (msg instanceof RpcMessage rpcMessage && rpcMessage.getData() instanceof RpcRequest rpcRequest) {
+                    if (rpcRequest.getMethodId() != null) {
+                        rpcRequest.setSignature(frame.getSignatures().get(rpcRequest.getMethodId()));
+                    } else if (rpcRequest.getInterfaceName() != null) {
+                        rpcRequest.setSignature(MethodSignatureUtil.signature(rpcRequest.getInterfaceName(), rpcRequest.getMethodName(), rpcRequest.getParamTypes()));
+                    }
+                    if (rpcRequest.getSignature() != null && filter.test(rpcRequest.getSignature())) {
+                        requests.add(rpcRequest);
+                    }
+                }
+            });
+        } finally {
+            channel.finishAndReleaseAll();
+        }
+        return requests;
+    }
+
+    private static Map<Integer, String> decodeMethodTable(ByteBuffer content) {
+        int count = content.getInt();
+        Map<Integer, String> signatures = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[content.getShort() & 0xFFFF];
+            content.get(bytes);
+            signatures.put(content.getInt(), new String(bytes, StandardCharsets.UTF_8));
+        }
+        return signatures;
+    }
+
+    /**
+     * 录制的请求帧
+     */
+    public static class CapturedFrame {
+
+        /**
+         * 录制批次, 即录制开始时间(毫秒)
+         */
+        private final long run;
+
+        /**
+         * 收到时间(微秒)
+         */
+        private final long timestamp;
+
+        /**
+         * 原始帧, 消息头 + 消息体
+         */
+        private final byte[] frame;
+
+        /**
+         * 录制时的方法表: 方法id -> 方法签名
+         */
+        private final Map<Integer, String> signatures;
+
+        CapturedFrame(long run, long timestamp, byte[] frame, Map<Integer, String> signatures) {
+            this.run = run;
+            this.timestamp = timestamp;
+            this.frame = frame;
+            this.signatures = signatures;
+        }
+
+        public long getRun() {
+            return run;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public byte[] getFrame() {
+            return frame;
+        }
+
+        public Map<Integer, String> getSignatures() {
+            return signatures;
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+package com.mycz.krpc.core.capture;
+
+import com.mycz.krpc.core.remoting.transport.channel.Transport;
+import com.mycz.krpc.core.remoting.transport.channel.TransportFactory;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 录制流量回放: 把录制的请求帧按原始节奏(或按倍速)发送到krpc服务, 统计响应耗时
+ * 帧原样发送, 只改写消息id用于匹配响应; 请求中的方法id要求目标服务与录制时是同一版本
+ * <p>
+ * 用法: CaptureReplay 录制目录 host:port [倍速, 默认1, 0表示不限速]
+ */
+public class CaptureReplay {
+
+    /**
+     * 在途请求上限, 超过时等待, 避免不限速回放压垮服务端
+     */
+    private static final int MAX_INFLIGHT = 1024;
+
+    /**
+     * 发送完成后等待在途请求响应的最长时间(秒)
+     */
+    private static final int DRAIN_TIMEOUT_SECONDS = 30;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("用法: CaptureReplay <录制目录> <host:port> [倍速, 0表示不限速]");
+            return;
+        }
+        String[] hostPort = args[1].split(":");
+        double speed = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+
+        List<CaptureReader.CapturedFrame> frames = new ArrayList<>();
+        new CaptureReader(args[0]).forEach(frames::add);
+        if (frames.isEmpty()) {
+            System.out.println("没有录制的请求: " + args[0]);
+            return;
+        }
+        if (!new CaptureReplay().replay(frames, hostPort[0], Integer.parseInt(hostPort[1]), speed)) {
+            System.exit(1);
+        }
+    }
+
+    private final Semaphore permits = new Semaphore(MAX_INFLIGHT);
+
+    /**
+     * 消息id(即发送序号) -> 发送时间
+     */
+    private long[] sendTimes;
+
+    /**
+     * 收到的响应耗时
+     */
+    private long[] latencies;
+
+    private int received;
+
+    /**
+     * 最后一次收到响应的时间
+     */
+    private long lastReceivedNanos;
+
+    /**
+     * 回放并输出统计
+     *
+     * @return 是否所有请求都收到了响应
+     */
+    public boolean replay(List<CaptureReader.CapturedFrame> frames, String host, int port, double speed) throws Exception {
+        int total = frames.size();
+        sendTimes = new long[total];
+        latencies = new long[total];
+
+        Transport transport = TransportFactory.getTransport("auto");
+        EventLoopGroup group = transport.eventLoopGroup(1, new DefaultThreadFactory("krpc-replay"));
+        try {
+            Bootstrap bootstrap = new Bootstrap()
+                    .group(group)
+                    .channel(transport.socketChannelClass())
+                    .option(ChannelOption.TCP_NODELAY, true)
+                    .handler(new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel ch) {
+                            ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(8 * 1024 * 1024, 12, 4, -16, 0), new ResponseHandler());
+                        }
+                    });
+            transport.configure(bootstrap);
+            Channel channel = bootstrap.connect(host, port).sync().channel();
+
+            long begin = System.nanoTime();
+            // 节奏基准: 每个录制批次的时间戳各自连续, 换批次时以当前时间重新对齐, 不回放批次之间的停顿
+            long run = frames.get(0).getRun();
+            long baseTimestamp = frames.get(0).getTimestamp();
+            long baseNanos = begin;
+            for (int i = 0; i < total; i++) {
+                CaptureReader.CapturedFrame frame = frames.get(i);
+                if (frame.getRun() != run) {
+                    run = frame.getRun();
+                    baseTimestamp = frame.getTimestamp();
+                    baseNanos = System.nanoTime();
+                }
+                if (speed > 0) {
+                    long target = baseNanos + (long) (TimeUnit.MICROSECONDS.toNanos(frame.getTimestamp() - baseTimestamp) / speed);
+                    long wait = target - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                permits.acquire();
+                ByteBuf buf = Unpooled.wrappedBuffer(frame.getFrame().clone());
+                // 消息id改为发送序号, 响应按序号计算耗时
+                buf.setInt(8, i);
+                sendTimes[i] = System.nanoTime();
+                channel.writeAndFlush(buf);
+            }
+            boolean complete = permits.tryAcquire(MAX_INFLIGHT, DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            long end = System.nanoTime();
+            channel.close().sync();
+            synchronized (this) {
+                // 超时时耗时截止到最后一个响应, 不计入等待
+                if (!complete && received > 0) {
+                    end = lastReceivedNanos;
+                }
+            }
+            this.report(total, end - begin, complete);
+            return complete;
+        } finally {
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    private synchronized void report(int total, long elapsedNanos, boolean complete) {
+        long[] sorted = Arrays.copyOf(latencies, received);
+        Arrays.sort(sorted);
+        if (!complete) {
+            System.out.printf("回放未完成: %d个请求%d秒内未收到响应, 统计只包含已收到的响应%n", total - received, DRAIN_TIMEOUT_SECONDS);
+        }
+        System.out.printf("请求: %d, 响应: %d, 未响应: %d, 耗时: %dms, 吞吐: %.0f/s%n", total, received, total - received,
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), received * 1e9 / Math.max(1, elapsedNanos));
+        if (received > 0) {
+            System.out.printf("耗时(us) p50: %.1f, p90: %.1f, p99: %.1f, max: %.1f%n",
+                    percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99), sorted[sorted.length - 1] / 1000.0);
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1000.0;
+    }
+
+    private class ResponseHandler extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ByteBuf frame = (ByteBuf) msg;
+            try {
+                int sequence = frame.getInt(frame.readerIndex() + 8);
+                if (sequence >= 0 && sequence < sendTimes.length) {
+                    synchronized (CaptureReplay.this) {
+                        lastReceivedNanos = System.nanoTime();
+                        latencies[received++] = lastReceivedNanos - sendTimes[sequence];
+                    }
+                    permits.release();
+                }
+            } finally {
+                frame.release();
+            }
+        }
+    }
+
+}
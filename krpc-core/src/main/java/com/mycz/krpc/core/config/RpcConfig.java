@@ -2,12 +2,20 @@ package com.mycz.krpc.core.config;
 
 import lombok.Data;
 
+import java.util.List;
+import java.util.Map;
+
 @Data
 public class RpcConfig {
     private String name; // 服务名
     private String host; // 主机ip地址
     private Integer port; // 端口
+    private String transport; // 网络传输 auto | nio | epoll | io_uring
     private Registry registry; // 注册中心
+    private Codec codec; // 编解码
+    private Server server; // 服务端
+    private Client client; // 客户端
+    private Warmup warmup; // 启动预热
 
     /**
      * 注册中心
@@ -18,6 +26,64 @@ public class RpcConfig {
         private String address; // 地址
         private String id; // 注册id
         private String serviceIP;
+        private Boolean snapshot; // 是否把服务发现结果保存到本地快照, 启动时和注册中心不可用时使用
+        private String snapshotFile; // 快照文件路径
+        private Integer initialWeight; // 注册时的初始权重, 预热期内逐步升到默认权重100; 只对random、p2c-ewma、ring-hash负载均衡生效
+        private Integer warmupPeriod; // 权重预热时长(毫秒), 0为注册即满权重
+    }
+
+    /**
+     * 编解码
+     */
+    @Data
+    public static class Codec {
+        private String serializer; // 默认序列化方式 kryo | kryo-unsafe
+        private Map<String, String> serviceSerializers; // 按服务名指定序列化方式, 服务提供方均已升级后再切换
+        private Boolean kryoRegistration; // 是否预注册kryo类, 开启后所有节点须使用相同配置
+        private List<String> kryoClasses; // 额外预注册的类(全限定名), 顺序决定注册id
+        private String compress; // 压缩方式 none | gzip | lz4 | zstd
+        private Integer compressThreshold; // 消息体小于该字节数时不压缩, 0表示总是压缩; 旧版本节点只能解析gzip, 全部升级后再开启
+    }
+
+    /**
+     * 服务端
+     */
+    @Data
+    public static class Server {
+        private String dispatch; // 业务方法执行方式 io(直接在IO线程执行, 仅适合不阻塞的方法) | pool(有界线程池) | virtual(每个请求一个虚拟线程)
+        private Integer threads; // pool模式线程数
+        private Integer maxConcurrency; // virtual模式同时执行的请求数上限
+        private Integer queueSize; // 排队上限, 超出时直接返回失败
+        private Boolean capture; // 是否录制收到的请求帧, 用于回放压测和预热
+        private String captureDir; // 录制目录
+        private Integer captureSegmentSize; // 单个录制文件大小(MB), 最大1024
+        private Integer captureSegments; // 保留的录制文件个数, 超出时删除最旧的
+        private Integer shutdownTimeout; // 停机时等待在途请求的最长时间(毫秒)
+        private Boolean reusePort; // 是否开启SO_REUSEPORT, 允许多个实例绑定同一端口(仅epoll/io_uring)
+    }
+
+    /**
+     * 客户端
+     */
+    @Data
+    public static class Client {
+        private Integer maxConnections; // 每个服务地址的最大连接数
+        private Integer maxPendingPerConnection; // 单条连接在途请求数达到该值且未达最大连接数时新建连接
+        private Integer timeout; // 请求超时时间(毫秒), 包含建连时间
+        private String loadBalance; // 默认负载均衡 random(按权重随机) | round-robin | least-outstanding | p2c-ewma | ring-hash
+        private Map<String, String> serviceLoadBalances; // 按服务名指定负载均衡
+    }
+
+    /**
+     * 启动预热, 完成后才注册服务
+     */
+    @Data
+    public static class Warmup {
+        private Boolean enable; // 是否预热
+        private Integer iterations; // 预热请求数上限
+        private Integer duration; // 预热时长上限(毫秒)
+        private String captureDir; // 录制目录, 配置后加载录制的请求作为预热样本
+        private List<String> methods; // 允许用录制请求预热的方法(须只读或幂等), 接口名#方法名 或完整签名; 未配置时不加载录制请求
     }
 
 }
@@ -29,6 +29,20 @@ public class ApplicationContext {
             .context(new HashMap<>())
             .build());
 
+    /**
+     * 设置当前线程的上下文, 服务端每个请求使用独立的上下文
+     */
+    public static void setContext(RpcContext context) {
+        CONTEXT.set(context);
+    }
+
+    /**
+     * 清除当前线程的上下文, 线程被复用时不会带上一次请求的内容
+     */
+    public static void removeContext() {
+        CONTEXT.remove();
+    }
+
     public static String getIp() {
         return CONTEXT.get().getIp();
     }
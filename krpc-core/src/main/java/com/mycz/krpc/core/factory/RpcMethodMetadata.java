@@ -0,0 +1,137 @@
+package com.mycz.krpc.core.factory;
+
+import com.mycz.krpc.core.annotation.RouteKey;
+import com.mycz.krpc.core.utils.MethodSignatureUtil;
+import lombok.Getter;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 客户端方法元数据, 代理生成时计算一次, 调用时直接使用
+ */
+@Getter
+public class RpcMethodMetadata {
+
+    /**
+     * 服务名
+     */
+    private final String serviceName;
+
+    /**
+     * 接口名
+     */
+    private final String interfaceName;
+
+    /**
+     * 方法名
+     */
+    private final String methodName;
+
+    /**
+     * 参数类型
+     */
+    private final Class<?>[] paramTypes;
+
+    /**
+     * 方法签名
+     */
+    private final String signature;
+
+    /**
+     * 返回值为CompletableFuture(或其父类型), 直接返回在途请求的future, 不阻塞调用线程
+     */
+    private final boolean async;
+
+    /**
+     * 路由参数下标, 没有@RouteKey时为-1
+     */
+    private final int routeKeyIndex;
+
+    /**
+     * 从路由参数上取路由键的属性读取方法, 为空时直接使用参数
+     */
+    private final Method routeKeyGetter;
+
+    /**
+     * 通过接口方法创建, 解析返回值类型和@RouteKey
+     *
+     * @param clazz  引用的接口, 方法可能声明在其父接口上
+     * @param method 接口方法
+     */
+    public RpcMethodMetadata(String serviceName, Class<?> clazz, Method method) {
+        this.serviceName = serviceName;
+        this.interfaceName = clazz.getName();
+        this.methodName = method.getName();
+        this.paramTypes = method.getParameterTypes();
+        this.signature = MethodSignatureUtil.signature(interfaceName, methodName, paramTypes);
+        this.async = method.getReturnType() != Object.class && method.getReturnType().isAssignableFrom(CompletableFuture.class);
+
+        int index = -1;
+        RouteKey routeKey = null;
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        for (int i = 0; i < parameterAnnotations.length; i++) {
+            for (Annotation annotation : parameterAnnotations[i]) {
+                if (annotation instanceof RouteKey key) {
+                    if (index >= 0) {
+                        throw new IllegalArgumentException("@RouteKey只能标注一个参数: " + method);
+                    }
+                    index = i;
+                    routeKey = key;
+                }
+            }
+        }
+        this.routeKeyIndex = index;
+        this.routeKeyGetter = routeKey == null || routeKey.value().isEmpty() ? null : getter(paramTypes[index], routeKey.value(), method);
+    }
+
+    public RpcMethodMetadata(String serviceName, String interfaceName, String methodName, Class<?>[] paramTypes) {
+        this(serviceName, interfaceName, methodName, paramTypes, Object.class);
+    }
+
+    public RpcMethodMetadata(String serviceName, String interfaceName, String methodName, Class<?>[] paramTypes, Class<?> returnType) {
+        this.serviceName = serviceName;
+        this.interfaceName = interfaceName;
+        this.methodName = methodName;
+        this.paramTypes = paramTypes;
+        this.signature = MethodSignatureUtil.signature(interfaceName, methodName, paramTypes);
+        this.async = returnType != Object.class && returnType.isAssignableFrom(CompletableFuture.class);
+        this.routeKeyIndex = -1;
+        this.routeKeyGetter = null;
+    }
+
+    /**
+     * 从调用参数中取路由键, 未标注@RouteKey或取值为null时返回null
+     */
+    public String routeKey(Object[] parameters) {
+        if (routeKeyIndex < 0 || parameters == null) {
+            return null;
+        }
+        Object value = parameters[routeKeyIndex];
+        if (value != null && routeKeyGetter != null) {
+            try {
+                value = routeKeyGetter.invoke(value);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("读取路由键失败: " + routeKeyGetter, e);
+            }
+        }
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * 查找属性读取方法: getXxx / isXxx / xxx(record)
+     */
+    private static Method getter(Class<?> type, String property, Method method) {
+        String suffix = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+        for (String name : new String[]{"get" + suffix, "is" + suffix, property}) {
+            try {
+                Method getter = type.getMethod(name);
+                getter.setAccessible(true);
+                return getter;
+            } catch (NoSuchMethodException ignored) {
+            }
+        }
+        throw new IllegalArgumentException("@RouteKey属性不存在: " + type.getName() + "." + property + ", " + method);
+    }
+}
@@ -2,33 +2,109 @@ package com.mycz.krpc.core.factory;
 
 import com.mycz.arch.common.util.RandomKit;
 import com.mycz.krpc.core.remoting.entity.RpcRequest;
-import com.mycz.krpc.core.remoting.entity.RpcResponse;
 import com.mycz.krpc.core.remoting.transport.client.NettyRpcClient;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class RpcReferenceProxy {
 
+    /**
+     * 异步调用的回调线程, 响应在客户端IO线程上到达, 调用方的后续逻辑不能在IO线程上执行
+     */
+    private static final ExecutorService CALLBACK_EXECUTOR = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("krpc-client-callback-", 0).factory());
+
+    /**
+     * 同步等待在请求超时之外多等的时间, 请求超时由客户端时间轮控制, 这里只作兜底
+     */
+    private static final long WAIT_MARGIN_MILLIS = 1000;
+
     /**
      * 代理rpc接口
      */
     public static Object proxy(String serviceName, String interfaceName, String methodName, Class<?>[] paramTypes, Object[] parameters) throws Exception {
+        return proxy(new RpcMethodMetadata(serviceName, interfaceName, methodName, paramTypes), parameters);
+    }
+
+    /**
+     * 异步调用rpc接口, 不阻塞调用线程, 适合单线程并发发起多个调用
+     */
+    public static <T> CompletableFuture<T> proxyAsync(String serviceName, String interfaceName, String methodName, Class<?>[] paramTypes, Object[] parameters) {
+        return proxyAsync(new RpcMethodMetadata(serviceName, interfaceName, methodName, paramTypes), parameters);
+    }
+
+    /**
+     * 代理rpc接口, 使用预先计算好的方法元数据; 异步方法直接返回在途请求的future
+     */
+    public static Object proxy(RpcMethodMetadata metadata, Object[] parameters) throws Exception {
+        if (metadata.isAsync()) {
+            return proxyAsync(metadata, parameters);
+        }
+        NettyRpcClient client = ApplicationContext.getInstance(NettyRpcClient.class);
+        // 响应只能由IO线程读取, 在IO线程上阻塞等待会使该线程上的所有连接永久挂起
+        if (client.inEventLoop()) {
+            throw new IllegalStateException("不能在krpc客户端IO线程上同步调用, 请使用异步接口或切换到业务线程: " + metadata.getSignature());
+        }
+        CompletableFuture<Object> future = call(client, metadata, parameters);
+        // 超时由客户端时间轮控制, 到期后future以TimeoutException结束
+        try {
+            return future.get(client.getTimeout() + WAIT_MARGIN_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 异步调用rpc接口, 使用预先计算好的方法元数据; 发送失败也通过future返回
+     * 返回的future在回调线程上完成(包括异常), 调用方的后续逻辑不会跑在IO线程上
+     */
+    public static <T> CompletableFuture<T> proxyAsync(RpcMethodMetadata metadata, Object[] parameters) {
+        CompletableFuture<T> future = call(ApplicationContext.getInstance(NettyRpcClient.class), metadata, parameters);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        future.whenCompleteAsync((value, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(value);
+            }
+        }, CALLBACK_EXECUTOR);
+        return result;
+    }
+
+    /**
+     * 发起调用, 返回的future在IO线程或超时线程上完成
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> CompletableFuture<T> call(NettyRpcClient client, RpcMethodMetadata metadata, Object[] parameters) {
         // 封装rpc请求消息
         RpcRequest rpcRequest = RpcRequest.builder()
                 .traceId(RandomKit.randomNumStr(16))
                 .ip("ip")
                 .version("1.0")
-                .serviceName(serviceName)
-                .interfaceName(interfaceName)
-                .methodName(methodName)
-                .paramTypes(paramTypes)
+                .serviceName(metadata.getServiceName())
+                .interfaceName(metadata.getInterfaceName())
+                .methodName(metadata.getMethodName())
+                .paramTypes(metadata.getParamTypes())
                 .parameters(parameters)
+                .signature(metadata.getSignature())
                 .build();
 
-        NettyRpcClient client = ApplicationContext.getInstance(NettyRpcClient.class);
-        CompletableFuture<RpcResponse<Object>> future = client.sendRpcRequest(rpcRequest);
-        return future.get(5, TimeUnit.SECONDS).getData();
+        try {
+            rpcRequest.setRouteKey(metadata.routeKey(parameters));
+            return client.sendRpcRequest(rpcRequest).thenApply(response -> (T) response.getData());
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
 }
@@ -0,0 +1,208 @@
+package com.mycz.krpc.core.lifecycle;
+
+import com.mycz.krpc.core.capture.CaptureLog;
+import com.mycz.krpc.core.factory.ApplicationContext;
+import com.mycz.krpc.core.registry.ServiceDiscovery;
+import com.mycz.krpc.core.registry.consul.ConsulServiceDiscovery;
+import com.mycz.krpc.core.remoting.entity.RpcConstants;
+import com.mycz.krpc.core.remoting.entity.RpcMessage;
+import com.mycz.krpc.core.remoting.transport.server.dispatcher.Dispatcher;
+import com.mycz.krpc.core.utils.ThreadPoolFactoryUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 优雅停机, 按顺序排空流量:
+ * 1. 从注册中心解除注册; 2. 通知已连接的客户端(GOAWAY)不再选择本实例; 3. 停止接受新连接, 稍后停止读取新请求;
+ * 4. 等待在途请求处理完成, 最长到超时时间; 5. 关闭连接、线程池和EventLoop
+ */
+@Slf4j
+public class GracefulShutdown {
+
+    /**
+     * 发出GOAWAY后继续读取的时间, 已在路上的请求仍会被处理
+     */
+    private static final long GOAWAY_GRACE_MILLIS = 500;
+
+    /**
+     * 服务端已建立的连接
+     */
+    private static final ChannelGroup CHANNELS = new DefaultChannelGroup("krpc-server", GlobalEventExecutor.INSTANCE);
+
+    /**
+     * 在途请求数: 已读取、尚未写出响应
+     */
+    private static final AtomicInteger INFLIGHT = new AtomicInteger();
+
+    private static final AtomicBoolean STOPPED = new AtomicBoolean();
+
+    /**
+     * 停机完成
+     */
+    private static final CompletableFuture<Void> DONE = new CompletableFuture<>();
+
+    /**
+     * 解除注册
+     */
+    private static volatile Runnable deregistration;
+
+    private static volatile Channel serverChannel;
+
+    private static volatile EventLoopGroup bossGroup;
+
+    private static volatile EventLoopGroup workerGroup;
+
+    private GracefulShutdown() {
+
+    }
+
+    /**
+     * 登记服务端监听连接和EventLoop
+     */
+    public static void server(Channel channel, EventLoopGroup boss, EventLoopGroup worker) {
+        serverChannel = channel;
+        bossGroup = boss;
+        workerGroup = worker;
+    }
+
+    /**
+     * 登记解除注册的动作, 停机时最先执行
+     */
+    public static void deregistration(Runnable runnable) {
+        deregistration = runnable;
+    }
+
+    /**
+     * 登记客户端连接, 连接关闭时自动移除
+     */
+    public static void channel(Channel channel) {
+        CHANNELS.add(channel);
+    }
+
+    public static void requestStarted() {
+        INFLIGHT.incrementAndGet();
+    }
+
+    public static void requestFinished() {
+        INFLIGHT.decrementAndGet();
+    }
+
+    public static boolean isStopped() {
+        return STOPPED.get();
+    }
+
+    /**
+     * 停机, 只执行一次; 其他调用方等待停机完成后返回
+     *
+     * @param timeoutMillis 等待在途请求的最长时间
+     */
+    public static void shutdown(long timeoutMillis) {
+        if (!STOPPED.compareAndSet(false, true)) {
+            DONE.join();
+            return;
+        }
+        boolean interrupted = false;
+        try {
+            interrupted = drain(timeoutMillis);
+        } finally {
+            DONE.complete(null);
+            // 停机过程中收到的中断在排空完成后恢复
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return 等待期间是否被中断过
+     */
+    private static boolean drain(long timeoutMillis) {
+        long begin = System.nanoTime();
+        log.info("*** krpc - 开始停机, 连接数: {}, 在途请求: {}", CHANNELS.size(), INFLIGHT.get());
+
+        // 1. 解除注册, 新的客户端不再发现本实例
+        Runnable deregister = deregistration;
+        if (deregister != null) {
+            try {
+                deregister.run();
+            } catch (Exception e) {
+                log.warn("*** krpc - 解除注册失败", e);
+            }
+        }
+
+        // 2. 通知已连接的客户端, 3. 不再接受新连接
+        CHANNELS.writeAndFlush(RpcMessage.builder()
+                .magicNum(RpcConstants.MAGIC_NUMBER)
+                .version(RpcConstants.VERSION)
+                .messageType(RpcConstants.GOAWAY_TYPE)
+                .codec(RpcConstants.CODEC_KRYO)
+                .compress(RpcConstants.COMPRESS_NONE)
+                .build());
+        if (serverChannel != null) {
+            serverChannel.close().awaitUninterruptibly(1, TimeUnit.SECONDS);
+        }
+        boolean interrupted = sleep(GOAWAY_GRACE_MILLIS);
+        for (Channel channel : CHANNELS) {
+            channel.config().setAutoRead(false);
+        }
+
+        // 4. 等待在途请求
+        long deadline = begin + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (INFLIGHT.get() > 0 && System.nanoTime() < deadline) {
+            interrupted |= sleep(10);
+        }
+        if (INFLIGHT.get() > 0) {
+            log.warn("*** krpc - 停机等待超时, 未完成请求: {}", INFLIGHT.get());
+        }
+
+        // 5. 关闭
+        CHANNELS.close().awaitUninterruptibly(1, TimeUnit.SECONDS);
+        Dispatcher dispatcher = ApplicationContext.getInstance(Dispatcher.class);
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+        ThreadPoolFactoryUtil.shutDownAllThreadPool();
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+            workerGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        }
+        if (ApplicationContext.getInstance(ServiceDiscovery.class) instanceof ConsulServiceDiscovery discovery) {
+            discovery.close();
+        }
+        CaptureLog captureLog = ApplicationContext.getInstance(CaptureLog.class);
+        if (captureLog != null) {
+            captureLog.close();
+        }
+        log.info("*** krpc - 停机完成, 耗时: {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+        return interrupted;
+    }
+
+    /**
+     * 等待指定时间, 中断不提前结束等待, 也不在此恢复中断标记, 避免之后的等待立即返回而空转
+     *
+     * @return 是否被中断过
+     */
+    private static boolean sleep(long millis) {
+        boolean interrupted = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        return interrupted;
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.mycz.krpc.core.lifecycle;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 服务就绪门: 所有登记的条件都满足后才执行就绪回调(注册服务等)
+ * 业务如需在自身预热完成后再接入流量, 可在启动前require自定义条件, 预热结束后ready
+ */
+@Slf4j
+public class Readiness {
+
+    /**
+     * 服务端口已绑定
+     */
+    public static final String SERVER = "server";
+
+    /**
+     * 服务方法调用表已建立
+     */
+    public static final String INVOKERS = "invokers";
+
+    /**
+     * 启动预热已完成
+     */
+    public static final String WARMUP = "warmup";
+
+    /**
+     * 未满足的条件
+     */
+    private static final Set<String> PENDING = new LinkedHashSet<>();
+
+    /**
+     * 就绪回调
+     */
+    private static final List<Runnable> CALLBACKS = new ArrayList<>();
+
+    private static boolean ready = false;
+
+    private Readiness() {
+
+    }
+
+    /**
+     * 登记一个就绪条件, 须在就绪之前调用
+     */
+    public static synchronized void require(String condition) {
+        if (ready) {
+            log.warn("*** krpc - 服务已就绪, 忽略就绪条件: {}", condition);
+            return;
+        }
+        PENDING.add(condition);
+    }
+
+    /**
+     * 条件满足, 最后一个条件满足时在当前线程执行就绪回调
+     */
+    public static void ready(String condition) {
+        List<Runnable> callbacks;
+        synchronized (Readiness.class) {
+            if (!PENDING.remove(condition) || !PENDING.isEmpty()) {
+                if (!PENDING.isEmpty()) {
+                    log.info("*** krpc - 就绪条件满足: {}, 等待: {}", condition, PENDING);
+                }
+                return;
+            }
+            ready = true;
+            callbacks = new ArrayList<>(CALLBACKS);
+            CALLBACKS.clear();
+        }
+        log.info("*** krpc - 服务就绪");
+        callbacks.forEach(Runnable::run);
+    }
+
+    /**
+     * 就绪后执行, 已就绪时立即执行
+     */
+    public static void onReady(Runnable callback) {
+        synchronized (Readiness.class) {
+            if (!ready) {
+                CALLBACKS.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    public static synchronized boolean isReady() {
+        return ready;
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.mycz.krpc.core.loadbalance;
+
+import com.mycz.krpc.core.registry.entity.ServiceDiscoveryResult;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 实例调用统计: 在途请求数 + 指数加权的响应耗时, 由客户端在每次调用结束时更新
+ */
+public class EndpointStats {
+
+    /**
+     * 衰减时间常数, 越大对历史耗时的记忆越长
+     */
+    private static final double DECAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 地址:端口 -> 统计
+     */
+    private static final Map<String, EndpointStats> STATS = new ConcurrentHashMap<>();
+
+    /**
+     * 在途请求数
+     */
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    /**
+     * 指数加权平均耗时(纳秒)
+     */
+    private double ewma;
+
+    /**
+     * 上次更新时间
+     */
+    private long lastUpdate = System.nanoTime();
+
+    public static EndpointStats of(ServiceDiscoveryResult instance) {
+        return STATS.computeIfAbsent(key(instance), k -> new EndpointStats());
+    }
+
+    /**
+     * 只保留仍在服务发现结果中的实例, 已下线实例的统计随之回收
+     * 回收时仍在途的请求结束时更新的是旧对象, 不影响新统计
+     */
+    public static void retain(Collection<ServiceDiscoveryResult> instances) {
+        Set<String> keys = new HashSet<>(instances.size() * 2);
+        for (ServiceDiscoveryResult instance : instances) {
+            keys.add(key(instance));
+        }
+        STATS.keySet().retainAll(keys);
+    }
+
+    private static String key(ServiceDiscoveryResult instance) {
+        return instance.getAddress() + ":" + instance.getPort();
+    }
+
+    /**
+     * 请求开始
+     *
+     * @return 开始时间
+     */
+    public long start() {
+        outstanding.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * 请求结束, 失败的请求按实际等待时间计入, 使超时的实例被降权
+     *
+     * @param startNanos 开始时间
+     */
+    public void end(long startNanos) {
+        outstanding.decrementAndGet();
+        long now = System.nanoTime();
+        long rtt = now - startNanos;
+        synchronized (this) {
+            // 耗时突增时立即生效, 下降时按时间衰减
+            if (rtt > ewma) {
+                ewma = rtt;
+            } else {
+                double w = Math.exp(-(now - lastUpdate) / DECAY_NANOS);
+                ewma = ewma * w + rtt * (1 - w);
+            }
+            lastUpdate = now;
+        }
+    }
+
+    /**
+     * 在途请求数
+     */
+    public int outstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * 负载代价: 加权耗时 * (在途请求数 + 1)
+     */
+    public double cost() {
+        double latency;
+        synchronized (this) {
+            // 没有新请求时同样随时间衰减, 偶发慢响应或冷启动后的实例能重新被选中
+            latency = ewma * Math.exp(-(System.nanoTime() - lastUpdate) / DECAY_NANOS);
+        }
+        return latency * (outstanding.get() + 1);
+    }
+}
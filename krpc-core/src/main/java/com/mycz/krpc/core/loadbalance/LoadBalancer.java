@@ -0,0 +1,23 @@
+package com.mycz.krpc.core.loadbalance;
+
+import com.mycz.krpc.core.registry.entity.ServiceDiscoveryResult;
+import com.mycz.krpc.core.remoting.entity.RpcRequest;
+
+import java.util.List;
+
+/**
+ * 负载均衡, 从服务发现得到的实例中选择本次调用的目标
+ */
+public interface LoadBalancer {
+
+    /**
+     * 选择实例
+     *
+     * @param serviceName 服务名
+     * @param instances   可用实例, 非空
+     * @param rpcRequest  本次请求
+     * @return 目标实例
+     */
+    ServiceDiscoveryResult select(String serviceName, List<ServiceDiscoveryResult> instances, RpcRequest rpcRequest);
+
+}
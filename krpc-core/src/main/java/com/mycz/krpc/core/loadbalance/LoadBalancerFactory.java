@@ -0,0 +1,52 @@
+package com.mycz.krpc.core.loadbalance;
+
+import com.mycz.krpc.core.loadbalance.consistenthash.RingHashLoadBalancer;
+import com.mycz.krpc.core.loadbalance.leastoutstanding.LeastOutstandingLoadBalancer;
+import com.mycz.krpc.core.loadbalance.p2c.P2cEwmaLoadBalancer;
+import com.mycz.krpc.core.loadbalance.random.WeightedRandomLoadBalancer;
+import com.mycz.krpc.core.loadbalance.roundrobin.RoundRobinLoadBalancer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 负载均衡注册表, 按配置名称查找实现
+ */
+public class LoadBalancerFactory {
+
+    /**
+     * 配置名称 -> 负载均衡
+     */
+    private static final Map<String, LoadBalancer> LOAD_BALANCERS = new ConcurrentHashMap<>();
+
+    static {
+        register("random", new WeightedRandomLoadBalancer());
+        register("round-robin", new RoundRobinLoadBalancer());
+        register("least-outstanding", new LeastOutstandingLoadBalancer());
+        register("p2c-ewma", new P2cEwmaLoadBalancer());
+        register("ring-hash", new RingHashLoadBalancer());
+    }
+
+    private LoadBalancerFactory() {
+
+    }
+
+    /**
+     * 注册负载均衡, 已存在时覆盖
+     */
+    public static void register(String name, LoadBalancer loadBalancer) {
+        LOAD_BALANCERS.put(name.toLowerCase(), loadBalancer);
+    }
+
+    /**
+     * 根据配置名称获取负载均衡
+     */
+    public static LoadBalancer getLoadBalancer(String name) {
+        LoadBalancer loadBalancer = LOAD_BALANCERS.get(name.toLowerCase());
+        if (loadBalancer == null) {
+            throw new IllegalArgumentException("不支持的负载均衡: " + name);
+        }
+        return loadBalancer;
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.mycz.krpc.core.loadbalance.consistenthash;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.mycz.krpc.core.loadbalance.LoadBalancer;
+import com.mycz.krpc.core.loadbalance.random.WeightedRandomLoadBalancer;
+import com.mycz.krpc.core.registry.entity.ServiceDiscoveryResult;
+import com.mycz.krpc.core.remoting.entity.RpcRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 带虚拟节点的一致性哈希, 按请求的路由键选择实例
+ * 实例增减时只有落在该实例虚拟节点上的键会迁移; 没有路由键的请求按权重随机
+ */
+public class RingHashLoadBalancer implements LoadBalancer {
+
+    /**
+     * 默认权重实例的虚拟节点数, 按权重等比增减
+     */
+    private static final int VIRTUAL_NODES = 160;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final LoadBalancer fallback = new WeightedRandomLoadBalancer();
+
+    /**
+     * 服务名 -> 哈希环, 实例的地址、端口、权重变化时重建
+     */
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+
+    @Override
+    public ServiceDiscoveryResult select(String serviceName, List<ServiceDiscoveryResult> instances, RpcRequest rpcRequest) {
+        String routeKey = rpcRequest == null ? null : rpcRequest.getRouteKey();
+        if (routeKey == null) {
+            return fallback.select(serviceName, instances, rpcRequest);
+        }
+        if (instances.size() == 1) {
+            return instances.get(0);
+        }
+        Ring ring = rings.get(serviceName);
+        // 服务发现每次返回同一个列表对象时直接复用; 列表对象不同但实例未变时复用已建好的环
+        if (ring == null || ring.instances != instances) {
+            String key = key(instances);
+            ring = ring != null && ring.key.equals(key) ? new Ring(ring, instances) : new Ring(instances, key);
+            rings.put(serviceName, ring);
+        }
+        return ring.select(hash(routeKey));
+    }
+
+    /**
+     * 实例列表的标识: 地址:端口*权重, 与列表顺序无关
+     */
+    private static String key(List<ServiceDiscoveryResult> instances) {
+        String[] keys = new String[instances.size()];
+        for (int i = 0; i < keys.length; i++) {
+            ServiceDiscoveryResult instance = instances.get(i);
+            keys[i] = instance.getAddress() + ":" + instance.getPort() + "*" + instance.weight();
+        }
+        Arrays.sort(keys);
+        return String.join(",", keys);
+    }
+
+    private static long hash(String key) {
+        return HASH.hashString(key, StandardCharsets.UTF_8).asLong();
+    }
+
+    /**
+     * 不可变的哈希环, 虚拟节点按哈希值排序后二分查找
+     */
+    private static class Ring {
+
+        private final List<ServiceDiscoveryResult> instances;
+
+        private final String key;
+
+        private final long[] hashes;
+
+        private final ServiceDiscoveryResult[] nodes;
+
+        /**
+         * 实例未变, 沿用已有的环
+         */
+        Ring(Ring ring, List<ServiceDiscoveryResult> instances) {
+            this.instances = instances;
+            this.key = ring.key;
+            this.hashes = ring.hashes;
+            this.nodes = ring.nodes;
+        }
+
+        Ring(List<ServiceDiscoveryResult> instances, String key) {
+            this.instances = instances;
+            this.key = key;
+            // 权重为0的实例没有虚拟节点, 不分配路由键; 全部为0时按等权处理
+            int total = 0;
+            int[] counts = new int[instances.size()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = (int) ((long) VIRTUAL_NODES * instances.get(i).weight() / ServiceDiscoveryResult.DEFAULT_WEIGHT);
+                total += counts[i];
+            }
+            if (total == 0) {
+                Arrays.fill(counts, VIRTUAL_NODES);
+                total = VIRTUAL_NODES * counts.length;
+            }
+
+            // 虚拟节点以地址:端口命名, 与实例在列表中的顺序、实例id无关
+            long[][] entries = new long[total][2];
+            int n = 0;
+            for (int i = 0; i < counts.length; i++) {
+                ServiceDiscoveryResult instance = instances.get(i);
+                String prefix = instance.getAddress() + ":" + instance.getPort() + "#";
+                for (int v = 0; v < counts[i]; v++) {
+                    entries[n][0] = hash(prefix + v);
+                    entries[n][1] = i;
+                    n++;
+                }
+            }
+            Arrays.sort(entries, (a, b) -> Long.compare(a[0], b[0]));
+
+            this.hashes = new long[total];
+            this.nodes = new ServiceDiscoveryResult[total];
+            for (int i = 0; i < total; i++) {
+                hashes[i] = entries[i][0];
+                nodes[i] = instances.get((int) entries[i][1]);
+            }
+        }
+
+        /**
+         * 顺时针找到第一个不小于键哈希的虚拟节点
+         */
+        ServiceDiscoveryResult select(long hash) {
+            int index = Arrays.binarySearch(hashes, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return nodes[index == hashes.length ? 0 : index];
+        }
+    }
+}
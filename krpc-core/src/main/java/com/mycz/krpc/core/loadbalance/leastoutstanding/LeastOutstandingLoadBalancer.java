@@ -0,0 +1,33 @@
+package com.mycz.krpc.core.loadbalance.leastoutstanding;
+
+import com.mycz.krpc.core.loadbalance.EndpointStats;
+import com.mycz.krpc.core.loadbalance.LoadBalancer;
+import com.mycz.krpc.core.registry.entity.ServiceDiscoveryResult;
+import com.mycz.krpc.core.remoting.entity.RpcRequest;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 在途请求最少优先, 从随机位置开始遍历, 数量相同时不会总是选中第一个
+ * 不考虑实例权重, 注册时的权重预热对该策略无效
+ */
+public class LeastOutstandingLoadBalancer implements LoadBalancer {
+
+    @Override
+    public ServiceDiscoveryResult select(String serviceName, List<ServiceDiscoveryResult> instances, RpcRequest rpcRequest) {
+        int size = instances.size();
+        int start = ThreadLocalRandom.current().nextInt(size);
+        ServiceDiscoveryResult selected = null;
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            ServiceDiscoveryResult instance = instances.get((start + i) % size);
+            int outstanding = EndpointStats.of(instance).outstanding();
+            if (outstanding < min) {
+                selected = instance;
+                min = outstanding;
+            }
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,35 @@
+package com.mycz.krpc.core.loadbalance.p2c;
+
+import com.mycz.krpc.core.loadbalance.EndpointStats;
+import com.mycz.krpc.core.loadbalance.LoadBalancer;
+import com.mycz.krpc.core.registry.entity.ServiceDiscoveryResult;
+import com.mycz.krpc.core.remoting.entity.RpcRequest;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 随机取两个实例, 选择负载代价(加权耗时 * 在途请求数)较低的一个
+ * 慢实例和过载实例自动少分流量, 又不会像全局最优那样让所有客户端同时涌向同一实例
+ */
+public class P2cEwmaLoadBalancer implements LoadBalancer {
+
+    @Override
+    public ServiceDiscoveryResult select(String serviceName, List<ServiceDiscoveryResult> instances, RpcRequest rpcRequest) {
+        int size = instances.size();
+        if (size == 1) {
+            return instances.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(size);
+        int j = random.nextInt(size - 1);
+        if (j >= i) {
+            j++;
+        }
+        ServiceDiscoveryResult a = instances.get(i);
+        ServiceDiscoveryResult b = instances.get(j);
+        double costA = EndpointStats.of(a).cost() / Math.max(1, a.weight());
+        double costB = EndpointStats.of(b).cost() / Math.max(1, b.weight());
+        return costA <= costB ? a : b;
+    }
+}
@@ -0,0 +1,41 @@
+package com.mycz.krpc.core.loadbalance.random;
+
+import com.mycz.krpc.core.loadbalance.LoadBalancer;
+import com.mycz.krpc.core.registry.entity.ServiceDiscoveryResult;
+import com.mycz.krpc.core.remoting.entity.RpcRequest;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 按权重随机, 权重相同时即为均匀随机
+ */
+public class WeightedRandomLoadBalancer implements LoadBalancer {
+
+    @Override
+    public ServiceDiscoveryResult select(String serviceName, List<ServiceDiscoveryResult> instances, RpcRequest rpcRequest) {
+        int size = instances.size();
+        if (size == 1) {
+            return instances.get(0);
+        }
+        int total = 0;
+        boolean sameWeight = true;
+        int firstWeight = instances.get(0).weight();
+        for (ServiceDiscoveryResult instance : instances) {
+            int weight = instance.weight();
+            total += weight;
+            sameWeight &= weight == firstWeight;
+        }
+        if (sameWeight || total <= 0) {
+            return instances.get(ThreadLocalRandom.current().nextInt(size));
+        }
+        int offset = ThreadLocalRandom.current().nextInt(total);
+        for (ServiceDiscoveryResult instance : instances) {
+            offset -= instance.weight();
+            if (offset < 0) {
+                return instance;
+            }
+        }
+        return instances.get(size - 1);
+    }
+}
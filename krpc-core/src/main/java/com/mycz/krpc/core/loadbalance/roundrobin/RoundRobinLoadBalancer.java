@@ -0,0 +1,26 @@
+package com.mycz.krpc.core.loadbalance.roundrobin;
+
+import com.mycz.krpc.core.loadbalance.LoadBalancer;
+import com.mycz.krpc.core.registry.entity.ServiceDiscoveryResult;
+import com.mycz.krpc.core.remoting.entity.RpcRequest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 轮询, 每个服务一个计数器
+ * 不考虑实例权重, 注册时的权重预热对该策略无效
+ */
+public class RoundRobinLoadBalancer implements LoadBalancer {
+
+    private final Map<String, AtomicInteger> counters = new ConcurrentHashMap<>();
+
+    @Override
+    public ServiceDiscoveryResult select(String serviceName, List<ServiceDiscoveryResult> instances, RpcRequest rpcRequest) {
+        AtomicInteger counter = counters.computeIfAbsent(serviceName, k -> new AtomicInteger());
+        int index = (counter.getAndIncrement() & Integer.MAX_VALUE) % instances.size();
+        return instances.get(index);
+    }
+}
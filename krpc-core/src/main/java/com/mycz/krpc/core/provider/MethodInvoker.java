@@ -0,0 +1,98 @@
+package com.mycz.krpc.core.provider;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * 预编译的方法调用器
+ * 注册时把实现对象绑定到MethodHandle上, 调用时只需一次invokeExact
+ */
+public class MethodInvoker {
+
+    private static final Object[] EMPTY_ARGS = new Object[0];
+
+    /**
+     * (Object[]) -> Object
+     */
+    private final MethodHandle handle;
+
+    private final String signature;
+
+    /**
+     * 参数类型, 基本类型已换成包装类型
+     */
+    private final Class<?>[] parameterTypes;
+
+    /**
+     * 参数是否为基本类型, 基本类型不接受null
+     */
+    private final boolean[] primitives;
+
+    private MethodInvoker(MethodHandle handle, String signature, Class<?>[] parameterTypes) {
+        this.handle = handle;
+        this.signature = signature;
+        this.parameterTypes = new Class<?>[parameterTypes.length];
+        this.primitives = new boolean[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            this.parameterTypes[i] = MethodType.methodType(parameterTypes[i]).wrap().returnType();
+            this.primitives[i] = parameterTypes[i].isPrimitive();
+        }
+    }
+
+    /**
+     * 通过接口方法创建调用器, 由接口方法做虚分派, 实现类无需public
+     */
+    public static MethodInvoker create(Method interfaceMethod, Object target, String signature) throws IllegalAccessException {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().unreflect(interfaceMethod);
+        } catch (IllegalAccessException e) {
+            // 非public接口, 放开访问限制后再取
+            interfaceMethod.setAccessible(true);
+            handle = MethodHandles.lookup().unreflect(interfaceMethod);
+        }
+        handle = handle.bindTo(target)
+                .asSpreader(Object[].class, interfaceMethod.getParameterCount())
+                .asType(MethodType.methodType(Object.class, Object[].class));
+        return new MethodInvoker(handle, signature, interfaceMethod.getParameterTypes());
+    }
+
+    /**
+     * 调用, 业务异常包装为InvocationTargetException, 与反射调用保持一致
+     * 参数个数或类型不符时抛出IllegalArgumentException, Error不包装直接抛出
+     */
+    public Object invoke(Object[] parameters) throws InvocationTargetException {
+        Object[] args = parameters == null ? EMPTY_ARGS : parameters;
+        this.checkArguments(args);
+        try {
+            return (Object) handle.invokeExact(args);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * 调用前校验参数, 避免把参数不符误报为业务异常
+     */
+    private void checkArguments(Object[] args) {
+        if (args.length != parameterTypes.length) {
+            throw new IllegalArgumentException("参数个数不匹配: " + signature + ", 需要" + parameterTypes.length + "个, 实际" + args.length + "个");
+        }
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg == null ? primitives[i] : !parameterTypes[i].isInstance(arg)) {
+                throw new IllegalArgumentException("参数类型不匹配: " + signature + ", 第" + (i + 1) + "个参数需要" + parameterTypes[i].getName()
+                        + ", 实际" + (arg == null ? "null" : arg.getClass().getName()));
+            }
+        }
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+}
@@ -1,11 +1,15 @@
 package com.mycz.krpc.core.provider;
 
+import com.mycz.krpc.core.utils.MethodSignatureUtil;
 import lombok.extern.slf4j.Slf4j;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * rpc方法调用
@@ -15,17 +19,83 @@ public class RpcReferenceInvoke {
 
     private static final ConcurrentHashMap<String, Object> INTERFACE_MAP = new ConcurrentHashMap<>();
 
+    /**
+     * 方法表, 下标即方法id
+     */
+    private static final List<MethodInvoker> INVOKERS = new CopyOnWriteArrayList<>();
+
+    /**
+     * 方法签名 -> 调用器
+     */
+    private static final Map<String, MethodInvoker> SIGNATURE_INVOKERS = new ConcurrentHashMap<>();
+
+    /**
+     * 方法签名 -> 方法id
+     */
+    private static final Map<String, Integer> METHOD_IDS = new ConcurrentHashMap<>();
+
+    /**
+     * 握手时下发给客户端的方法表快照, 使用HashMap保证可被kryo序列化
+     */
+    private static volatile HashMap<String, Integer> methodTable = new HashMap<>();
+
     /**
      * 根据接口名，方法，参数值 调用对应的实现方法
      */
     public static Object invoke(String interfaceName, String methodName, Class<?>[] paramTypes, Object[] parameters) throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+        MethodInvoker invoker = SIGNATURE_INVOKERS.get(MethodSignatureUtil.signature(interfaceName, methodName, paramTypes));
+        if (invoker != null) {
+            return invoker.invoke(parameters);
+        }
+        // 未登记的方法走反射
         Object interfaceObject = INTERFACE_MAP.get(interfaceName);
         Method method = interfaceObject.getClass().getMethod(methodName, paramTypes);
         return method.invoke(interfaceObject, parameters);
     }
 
-    public static void addInterface(Class<?> tclass, Object obj) {
+    /**
+     * 根据握手下发的方法id调用对应的实现方法
+     */
+    public static Object invoke(int methodId, Object[] parameters) throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+        if (methodId < 0 || methodId >= INVOKERS.size()) {
+            throw new NoSuchMethodException("方法id不存在: " + methodId);
+        }
+        return INVOKERS.get(methodId).invoke(parameters);
+    }
+
+    /**
+     * 方法id对应的方法签名, id不存在时返回null
+     */
+    public static String signature(int methodId) {
+        return methodId < 0 || methodId >= INVOKERS.size() ? null : INVOKERS.get(methodId).getSignature();
+    }
+
+    public static synchronized void addInterface(Class<?> tclass, Object obj) {
         INTERFACE_MAP.put(tclass.getName(), obj);
+
+        // 登记方法表, 每个接口方法预先绑定好调用器
+        for (Method method : tclass.getMethods()) {
+            String signature = MethodSignatureUtil.signature(tclass.getName(), method.getName(), method.getParameterTypes());
+            if (METHOD_IDS.containsKey(signature)) {
+                continue;
+            }
+            try {
+                MethodInvoker invoker = MethodInvoker.create(method, obj, signature);
+                INVOKERS.add(invoker);
+                SIGNATURE_INVOKERS.put(signature, invoker);
+                METHOD_IDS.put(signature, INVOKERS.size() - 1);
+            } catch (IllegalAccessException | RuntimeException e) {
+                log.warn("*** krpc - 方法调用器创建失败, 将使用反射调用: {}", signature, e);
+            }
+        }
+        methodTable = new HashMap<>(METHOD_IDS);
+    }
+
+    /**
+     * 方法表: 方法签名 -> 方法id
+     */
+    public static HashMap<String, Integer> getMethodTable() {
+        return methodTable;
     }
 
 }
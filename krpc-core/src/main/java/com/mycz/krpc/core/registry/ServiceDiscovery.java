@@ -5,6 +5,7 @@ import com.mycz.krpc.core.remoting.entity.RpcRequest;
 
 import java.net.InetSocketAddress;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 服务发现
@@ -13,4 +14,22 @@ public interface ServiceDiscovery {
 
     ServiceDiscoveryResult discovery(String serviceName) throws Exception;
 
+    /**
+     * 服务的全部可用实例, 供负载均衡选择; 默认只返回discovery的结果
+     */
+    default List<ServiceDiscoveryResult> instances(String serviceName) throws Exception {
+        return List.of(this.discovery(serviceName));
+    }
+
+    /**
+     * 异步获取服务的全部可用实例, 调用路径上不阻塞; 默认同步调用instances
+     */
+    default CompletableFuture<List<ServiceDiscoveryResult>> instancesAsync(String serviceName) {
+        try {
+            return CompletableFuture.completedFuture(this.instances(serviceName));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
 }
@@ -11,8 +11,15 @@ public interface ServiceRegistry {
 
     /**
      * 注册
+     *
+     * @param weight 初始权重, 客户端按权重分配流量
      */
-    ServiceRegisterResult register(String rpcServiceName, InetSocketAddress inetSocketAddress);
+    ServiceRegisterResult register(String rpcServiceName, InetSocketAddress inetSocketAddress, int weight);
+
+    /**
+     * 更新已注册服务的权重
+     */
+    void updateWeight(String id, int weight);
 
     /**
      * 解除注册
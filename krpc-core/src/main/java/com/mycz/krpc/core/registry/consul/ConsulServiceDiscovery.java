@@ -1,69 +1,76 @@
 package com.mycz.krpc.core.registry.consul;
 
 import com.ecwid.consul.v1.ConsulClient;
-import com.ecwid.consul.v1.QueryParams;
-import com.ecwid.consul.v1.Response;
-import com.ecwid.consul.v1.catalog.CatalogServiceRequest;
-import com.ecwid.consul.v1.catalog.model.CatalogService;
-import com.ecwid.consul.v1.health.model.HealthService;
-import com.mycz.arch.common.cache.ObjectCache;
-import com.mycz.arch.common.util.JsonKit;
-import com.mycz.arch.common.util.ListKit;
 import com.mycz.krpc.core.registry.ServiceDiscovery;
 import com.mycz.krpc.core.registry.entity.ServiceDiscoveryResult;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 public class ConsulServiceDiscovery implements ServiceDiscovery {
 
+    /**
+     * 服务元数据中的权重字段
+     */
+    public static final String WEIGHT_META = "weight";
+
     public ConsulClient client;
 
-    private final ObjectCache<List<CatalogService>> cache = new ObjectCache();
+    /**
+     * 服务实例监听, 调用路径上只读快照
+     */
+    private final ServiceWatcher watcher;
 
     public ConsulServiceDiscovery(String address) {
+        this(address, null);
+    }
+
+    /**
+     * @param snapshotFile 服务实例快照文件, 为空时不使用快照
+     */
+    public ConsulServiceDiscovery(String address, String snapshotFile) {
         String ipPort = address.substring("consul://".length());
         client = new ConsulClient(ipPort.split(":")[0], Integer.parseInt(ipPort.split(":")[1]));
+        watcher = new ServiceWatcher(client, snapshotFile == null ? null : new DiscoverySnapshotFile(snapshotFile));
+        watcher.loadSnapshot();
     }
     
     @Override
     public ServiceDiscoveryResult discovery(String serviceName) throws Exception {
-        if (client == null) {
-            throw new Exception("ConsulClient未初始化");
-        }
-
-        List<CatalogService> services = cache.get(serviceName);
-        if (services == null) {
-            Response<List<CatalogService>> response = client.getCatalogService(serviceName, CatalogServiceRequest.newBuilder().build());
-            services = response.getValue();
-            if (services == null) {
-                services = new ArrayList<>();
-            }
-            cache.put(serviceName, services, 3);
-        } else if (services.isEmpty()) {
+        ServiceDiscoveryResult result = watcher.snapshot(serviceName).random();
+        if (result == null) {
             throw new Exception("无可用服务: " + serviceName);
         }
+        return result;
+    }
 
-        // 过滤匹配的服务
-        List<ServiceDiscoveryResult> matchedServices = services.stream()
-                .filter(s -> serviceName.equals(s.getServiceName()))
-                .map(s -> ServiceDiscoveryResult.builder()
-                        .id(s.getServiceId())
-                        .name(s.getServiceName())
-                        .address(s.getServiceAddress())
-                        .port(s.getServicePort())
-                        .build())
-                .toList();
-
-        if (matchedServices.isEmpty()) {
+    @Override
+    public List<ServiceDiscoveryResult> instances(String serviceName) throws Exception {
+        List<ServiceDiscoveryResult> instances = watcher.snapshot(serviceName).instances();
+        if (instances.isEmpty()) {
             throw new Exception("无可用服务: " + serviceName);
         }
+        return instances;
+    }
+
+    @Override
+    public CompletableFuture<List<ServiceDiscoveryResult>> instancesAsync(String serviceName) {
+        return watcher.snapshotAsync(serviceName).thenApply(snapshot -> {
+            if (snapshot.instances().isEmpty()) {
+                throw new CompletionException(new Exception("无可用服务: " + serviceName));
+            }
+            return snapshot.instances();
+        });
+    }
 
-        return matchedServices.get(ThreadLocalRandom.current().nextInt(matchedServices.size()));
+    /**
+     * 停止服务监听
+     */
+    public void close() {
+        watcher.close();
     }
 
 }
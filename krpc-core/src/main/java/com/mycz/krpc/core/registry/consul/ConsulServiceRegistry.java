@@ -12,6 +12,9 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 public class ConsulServiceRegistry implements ServiceRegistry {
@@ -26,8 +29,19 @@ public class ConsulServiceRegistry implements ServiceRegistry {
      */
     public static final String INTERVAL = "3s";
 
+    /**
+     * 检查持续失败超过该时间后Consul自动删除服务, 进程异常退出或解除注册失败时不会残留
+     */
+    public static final String DEREGISTER_CRITICAL_AFTER = "1m";
+
     private final ConsulClient client;
 
+    /**
+     * 已注册的服务, 更新权重时按原定义重新注册
+     * 更新权重与解除注册都在该map的同一key上原子执行, 解除注册后不会被更新权重重新注册
+     */
+    private final Map<String, NewService> services = new ConcurrentHashMap<>();
+
     public ConsulServiceRegistry(String address) {
         if (!address.startsWith("consul://")) {
             throw new ServiceRegistryException("consul注册中心地址格式错误");
@@ -40,7 +54,7 @@ public class ConsulServiceRegistry implements ServiceRegistry {
      * 注册服务
      */
     @Override
-    public ServiceRegisterResult register(String serviceName, InetSocketAddress address) {
+    public ServiceRegisterResult register(String serviceName, InetSocketAddress address, int weight) {
         // 服务基础信息
         NewService service = new NewService();
         String serviceId = serviceName + "." + RandomKit.randomString(RandomKit.CS_LOWERCASE_LETTER + RandomKit.CS_NUMBER, 12);
@@ -48,12 +62,16 @@ public class ConsulServiceRegistry implements ServiceRegistry {
         service.setName(serviceName);
         service.setAddress(address.getAddress().getHostAddress());
         service.setPort(address.getPort());
+        service.setMeta(new HashMap<>(Map.of(ConsulServiceDiscovery.WEIGHT_META, String.valueOf(weight))));
 
         // 心态检查配置
         NewService.Check check = new NewService.Check();
         check.setTcp(address.getAddress().getHostAddress() + ":" + address.getPort());
         check.setTimeout(TIME_OUT);
         check.setInterval(INTERVAL);
+        check.setDeregisterCriticalServiceAfter(DEREGISTER_CRITICAL_AFTER);
+        // 就绪后才注册, 直接以passing状态加入, 不必等第一次检查
+        check.setStatus("passing");
         service.setCheck(check);
 
         // 生成服务文件
@@ -80,17 +98,36 @@ public class ConsulServiceRegistry implements ServiceRegistry {
             System.exit(-1);
         }
 
-        log.info("*** 服务注册成功 - 服务名ID:{}, 地址:{}:{} ", serviceId, address.getAddress().getHostAddress(), address.getPort());
+        // 之后的重新注册不再指定检查状态, 保留Consul当前的检查结果
+        check.setStatus(null);
+        services.put(serviceId, service);
+        log.info("*** 服务注册成功 - 服务名ID:{}, 地址:{}:{}, 权重:{}", serviceId, address.getAddress().getHostAddress(), address.getPort(), weight);
         return ServiceRegisterResult.builder().id(serviceId).build();
     }
 
     /**
-     * 解除服务注册
+     * 更新权重, Consul通过同id重新注册更新元数据; 已解除注册的服务不再更新
+     */
+    @Override
+    public void updateWeight(String serviceId, int weight) {
+        services.computeIfPresent(serviceId, (id, service) -> {
+            service.getMeta().put(ConsulServiceDiscovery.WEIGHT_META, String.valueOf(weight));
+            client.agentServiceRegister(service);
+            log.info("*** 服务权重更新 - id:{}, 权重:{}", serviceId, weight);
+            return service;
+        });
+    }
+
+    /**
+     * 解除服务注册, 与更新权重互斥
      */
     @Override
     public void deregister(String serviceId) {
-        log.info("*** 解除服务注册 - id:{}", serviceId);
-        client.agentServiceDeregister(serviceId);
+        services.compute(serviceId, (id, service) -> {
+            log.info("*** 解除服务注册 - id:{}", serviceId);
+            client.agentServiceDeregister(serviceId);
+            return null;
+        });
     }
 
 }
@@ -0,0 +1,131 @@
+package com.mycz.krpc.core.registry.consul;
+
+import com.mycz.krpc.core.registry.entity.ServiceDiscoveryResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 服务发现结果的本地快照文件
+ * 启动时先用快照路由, 注册中心不可用时快照中的实例继续可用
+ * <p>
+ * 格式: magic(int) version(byte) 服务数(int) { 服务名(utf) 实例数(int) { id(utf) address(utf) port(int) weight(int, -1为未设置) } }
+ */
+@Slf4j
+public class DiscoverySnapshotFile {
+
+    private static final int MAGIC = 0x4B534E50;
+
+    private static final byte VERSION = 1;
+
+    /**
+     * 服务数、实例数的合理上限, 超出视为文件损坏
+     */
+    private static final int MAX_COUNT = 100_000;
+
+    private final Path path;
+
+    public DiscoverySnapshotFile(String path) {
+        this.path = Path.of(path);
+    }
+
+    /**
+     * 读取快照, 文件不存在或格式不符时返回空
+     */
+    public Map<String, List<ServiceDiscoveryResult>> load() {
+        Map<String, List<ServiceDiscoveryResult>> services = new HashMap<>();
+        if (!Files.isRegularFile(path)) {
+            return services;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                log.warn("*** krpc - 服务快照格式不符, 忽略: {}", path);
+                return services;
+            }
+            int serviceCount = checkCount(in.readInt());
+            for (int i = 0; i < serviceCount; i++) {
+                String serviceName = in.readUTF();
+                int count = checkCount(in.readInt());
+                List<ServiceDiscoveryResult> instances = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    String id = in.readUTF();
+                    String address = in.readUTF();
+                    int port = in.readInt();
+                    if (port <= 0 || port > 65535) {
+                        throw new IOException("端口不合法: " + port);
+                    }
+                    int weight = in.readInt();
+                    instances.add(ServiceDiscoveryResult.builder()
+                            .id(id)
+                            .name(serviceName)
+                            .address(address)
+                            .port(port)
+                            .weight(weight < 0 ? null : weight)
+                            .socketAddress(new InetSocketAddress(address, port))
+                            .build());
+                }
+                services.put(serviceName, instances);
+            }
+        } catch (IOException | RuntimeException e) {
+            // 任何解析异常都视为文件损坏, 不影响启动
+            log.warn("*** krpc - 服务快照读取失败, 忽略: {}", path, e);
+            services.clear();
+        }
+        return services;
+    }
+
+    private static int checkCount(int count) throws IOException {
+        if (count < 0 || count > MAX_COUNT) {
+            throw new IOException("数量不合法: " + count);
+        }
+        return count;
+    }
+
+    /**
+     * 写入快照, 先写临时文件再原子替换, 进程中途退出不会留下半个文件
+     */
+    public synchronized void save(Map<String, List<ServiceDiscoveryResult>> services) {
+        Path dir = path.toAbsolutePath().getParent();
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeInt(services.size());
+                for (Map.Entry<String, List<ServiceDiscoveryResult>> entry : services.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().size());
+                    for (ServiceDiscoveryResult instance : entry.getValue()) {
+                        out.writeUTF(instance.getId() == null ? "" : instance.getId());
+                        out.writeUTF(instance.getAddress());
+                        out.writeInt(instance.getPort());
+                        out.writeInt(instance.getWeight() == null ? -1 : instance.getWeight());
+                    }
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("*** krpc - 服务快照写入失败: {}", path, e);
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+}
@@ -1,103 +1,307 @@
-//package com.mycz.krpc.core.registry.consul;
-//
-//import com.ecwid.consul.v1.ConsulClient;
-//import com.ecwid.consul.v1.QueryParams;
-//import com.ecwid.consul.v1.Response;
-//import com.ecwid.consul.v1.health.HealthServicesRequest;
-//import com.ecwid.consul.v1.health.model.HealthService;
-//import com.mycz.krpc.core.registry.entity.ServiceDiscoveryResult;
-//
-//import java.util.List;
-//import java.util.concurrent.*;
-//
-///**
-// * Service服务监听
-// */
-//public class ServiceWatcher {
-//
-//    /**
-//     * 可用服务
-//     */
-//    private static final ConcurrentHashMap<String, List<?>> availableService = new ConcurrentHashMap<>();
-//
-//    /**
-//     * 狗狗登记册
-//     */
-//    private static final ConcurrentHashMap<String, Dog> dogs = new ConcurrentHashMap<>();
-//
-//    /**
-//     * 狗狗执行小队
-//     */
-//    private static final ExecutorService dogExecutor = Executors.newFixedThreadPool(200);
-//
-//
-//    public static void addWatch(String serviceName) {
-//        Dog dog = dogs.get(serviceName);
-//        if (dog != null) {
-//            return;
-//        }
-//
-//        synchronized (ServiceWatcher.class) {
-//            dog = new Dog(serviceName);
-//            dogExecutor.submit(new Dog(serviceName));
-//            dogs.put(serviceName, dog);
-//        }
-//    }
-//
-//
-//    /**
-//     * 一个狗看一个服务
-//     */
-//    private static final class Dog implements Runnable {
-//        // 服务名称
-//        private final String serviceName;
-//        private final ConsulClient client;
-//
-//        private volatile long lastIndex = 0;
-//
-//        Dog(String serviceName, ConsulClient client) {
-//            this.serviceName = serviceName;
-//            this.client = client;
-//        }
-//
-//        @Override
-//        public void run() {
-//            // 随机抖动，避免所有 watcher 同时打到 Consul
-//            try {
-//                Thread.sleep(ThreadLocalRandom.current().nextInt(100, 1500));
-//            } catch (InterruptedException ignored) {
-//                // ignored
-//            }
-//
-//            while (true) {
-//                try {
-//                    HealthServicesRequest req = HealthServicesRequest.newBuilder()
-//                            .setPassing(true)
-//                            .setQueryParams(QueryParams.Builder.builder()
-//                                    .setIndex(lastIndex)
-//                                    .setWaitTime(10)
-//                                    .build())
-//                            .build();
-//
-//                    Response<List<HealthService>> resp = client.getHealthServices(serviceName, req);
-//                    Long newIdx = resp.getConsulIndex();
-//                    if (newIdx != null && !newIdx.equals(lastIndex)) {
-//                        lastIndex = newIdx;
-//                        List<ServiceDiscoveryResult> results = mapToResults(resp.getValue(), serviceName);
-//                        putCache(serviceName, results);
-//                        // 成功则重置回退
-//                        backoffSec = 1;
-//                    }
-//                    // 如果没有变化，Consul 会在 waitTime 超时后返回；循环继续即可
-//                } catch (Throwable ex) {
-//                    try {
-//                        Thread.sleep( 1000L);
-//                    } catch (InterruptedException ignored) {
-//
-//                    }
-//                }
-//            }
-//        }
-//    }
-//
-//}
+package com.mycz.krpc.core.registry.consul;
+
+import com.ecwid.consul.v1.ConsulClient;
+import com.ecwid.consul.v1.QueryParams;
+import com.ecwid.consul.v1.Response;
+import com.ecwid.consul.v1.health.HealthServicesRequest;
+import com.ecwid.consul.v1.health.model.HealthService;
+import com.mycz.krpc.core.loadbalance.EndpointStats;
+import com.mycz.krpc.core.registry.entity.ServiceDiscoveryResult;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Service服务监听
+ * 每个被引用的服务一个虚拟线程, 通过Consul阻塞查询监听健康(passing)实例, 变化时整体替换不可变快照
+ * 调用路径上只读volatile快照, 不访问Consul; 配置了快照文件时每次变化后落盘, 启动时先用快照路由
+ */
+@Slf4j
+public class ServiceWatcher {
+
+    /**
+     * 阻塞查询最长等待时间(秒), 需小于Consul客户端读超时
+     */
+    private static final long WAIT_SECONDS = 55;
+
+    /**
+     * 同步获取时首次拉取的最长等待时间
+     */
+    private static final long INIT_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * 查询失败后的最大退避时间
+     */
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final ConsulClient client;
+
+    /**
+     * 服务名 -> 监听
+     */
+    private final Map<String, Watch> watches = new ConcurrentHashMap<>();
+
+    /**
+     * 本地快照文件, 为空时不落盘
+     */
+    private final DiscoverySnapshotFile snapshotFile;
+
+    private volatile boolean running = true;
+
+    public ServiceWatcher(ConsulClient client, DiscoverySnapshotFile snapshotFile) {
+        this.client = client;
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * 加载本地快照并立即开始监听其中的服务, 在Consul返回之前使用快照中的实例
+     */
+    public void loadSnapshot() {
+        if (snapshotFile == null) {
+            return;
+        }
+        snapshotFile.load().forEach((serviceName, instances) -> watches.computeIfAbsent(serviceName, name -> {
+            log.info("*** krpc - 从快照加载服务实例: {}, 数量: {}", name, instances.size());
+            return this.start(name, new Snapshot(instances));
+        }));
+    }
+
+    /**
+     * 服务的当前快照, 首次调用时启动监听并等待第一次拉取完成
+     */
+    public Snapshot snapshot(String serviceName) throws Exception {
+        Watch watch = this.watch(serviceName);
+        Snapshot snapshot = watch.snapshot;
+        if (snapshot == null) {
+            try {
+                snapshot = watch.initialized.get(INIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                throw new Exception("服务发现超时: " + serviceName);
+            } catch (ExecutionException e) {
+                throw new Exception("服务发现失败: " + serviceName, e.getCause());
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 服务的当前快照, 首次拉取未完成时返回的future在拉取完成后结束, 不阻塞调用线程
+     * 等待时长由调用方的请求超时控制
+     */
+    public CompletableFuture<Snapshot> snapshotAsync(String serviceName) {
+        Watch watch = this.watch(serviceName);
+        Snapshot snapshot = watch.snapshot;
+        if (snapshot != null) {
+            return CompletableFuture.completedFuture(snapshot);
+        }
+        // 不把initialized交给调用方, 避免被外部完成
+        CompletableFuture<Snapshot> future = new CompletableFuture<>();
+        watch.initialized.whenComplete((value, e) -> {
+            if (e != null) {
+                future.completeExceptionally(new Exception("服务发现失败: " + serviceName, e));
+            } else {
+                future.complete(value);
+            }
+        });
+        return future;
+    }
+
+    private Watch watch(String serviceName) {
+        Watch watch = watches.get(serviceName);
+        if (watch == null) {
+            watch = watches.computeIfAbsent(serviceName, name -> this.start(name, null));
+        }
+        return watch;
+    }
+
+    /**
+     * 停止所有监听
+     */
+    public void close() {
+        running = false;
+        watches.values().forEach(watch -> {
+            if (watch.thread != null) {
+                watch.thread.interrupt();
+            }
+        });
+    }
+
+    private Watch start(String serviceName, Snapshot initial) {
+        Watch watch = new Watch(serviceName);
+        if (initial != null) {
+            watch.publish(initial);
+        }
+        watch.thread = Thread.ofVirtual().name("krpc-watcher-" + serviceName).start(() -> this.loop(watch));
+        return watch;
+    }
+
+    /**
+     * 阻塞查询循环, 查询失败时保留上一份快照(包括从文件加载的快照)并指数退避
+     */
+    private void loop(Watch watch) {
+        long index = 0;
+        boolean fresh = false;
+        long backoff = 1000;
+        while (running) {
+            try {
+                HealthServicesRequest request = HealthServicesRequest.newBuilder()
+                        .setPassing(true)
+                        .setQueryParams(QueryParams.Builder.builder()
+                                .setIndex(index)
+                                .setWaitTime(WAIT_SECONDS)
+                                .build())
+                        .build();
+                Response<List<HealthService>> response = client.getHealthServices(watch.serviceName, request);
+                Long newIndex = response.getConsulIndex();
+                // 索引回退(Consul重启等)时从0重新开始
+                long next = newIndex == null || newIndex < index ? 0 : newIndex;
+                if (!fresh || next != index) {
+                    watch.publish(this.toSnapshot(watch.serviceName, response.getValue()));
+                    fresh = true;
+                    this.published();
+                }
+                index = next;
+                backoff = 1000;
+            } catch (Throwable e) {
+                if (!running) {
+                    break;
+                }
+                log.warn("*** krpc - 服务监听失败: {}, {}ms后重试", watch.serviceName, backoff, e);
+                // 首次拉取失败时让等待中的调用立即失败, 不必等到超时
+                watch.initialized.completeExceptionally(e);
+                try {
+                    // 随机抖动, 避免所有watcher同时打到Consul
+                    Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+                } catch (InterruptedException ignored) {
+                    break;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * 实例变化后: 回收已下线实例的调用统计, 所有服务的当前实例写入快照文件
+     */
+    private void published() {
+        Map<String, List<ServiceDiscoveryResult>> services = new HashMap<>();
+        List<ServiceDiscoveryResult> instances = new ArrayList<>();
+        watches.forEach((serviceName, watch) -> {
+            Snapshot snapshot = watch.snapshot;
+            if (snapshot != null) {
+                services.put(serviceName, snapshot.instances());
+                instances.addAll(snapshot.instances());
+            }
+        });
+        EndpointStats.retain(instances);
+        if (snapshotFile != null) {
+            snapshotFile.save(services);
+        }
+    }
+
+    private Snapshot toSnapshot(String serviceName, List<HealthService> services) {
+        List<ServiceDiscoveryResult> results = new ArrayList<>();
+        if (services != null) {
+            for (HealthService healthService : services) {
+                HealthService.Service service = healthService.getService();
+                if (service == null || !serviceName.equals(service.getService())) {
+                    continue;
+                }
+                // 服务未登记地址时使用节点地址
+                String address = service.getAddress();
+                if ((address == null || address.isEmpty()) && healthService.getNode() != null) {
+                    address = healthService.getNode().getAddress();
+                }
+                results.add(ServiceDiscoveryResult.builder()
+                        .id(service.getId())
+                        .name(service.getService())
+                        .address(address)
+                        .port(service.getPort())
+                        .weight(weight(service.getMeta()))
+                        .socketAddress(new InetSocketAddress(address, service.getPort()))
+                        .build());
+            }
+        }
+        log.info("*** krpc - 服务实例更新: {}, 数量: {}", serviceName, results.size());
+        return new Snapshot(results);
+    }
+
+    /**
+     * 从服务元数据读取权重
+     */
+    private static Integer weight(Map<String, String> meta) {
+        String weight = meta == null ? null : meta.get(ConsulServiceDiscovery.WEIGHT_META);
+        if (weight == null) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(weight);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 服务实例的不可变快照, 列表和数组在创建后不再修改
+     */
+    public static final class Snapshot {
+
+        private final List<ServiceDiscoveryResult> instances;
+
+        private final ServiceDiscoveryResult[] endpoints;
+
+        Snapshot(List<ServiceDiscoveryResult> instances) {
+            this.instances = List.copyOf(instances);
+            this.endpoints = instances.toArray(new ServiceDiscoveryResult[0]);
+        }
+
+        public List<ServiceDiscoveryResult> instances() {
+            return instances;
+        }
+
+        /**
+         * 随机取一个实例, 没有可用实例时返回null
+         */
+        public ServiceDiscoveryResult random() {
+            ServiceDiscoveryResult[] endpoints = this.endpoints;
+            if (endpoints.length == 0) {
+                return null;
+            }
+            return endpoints[ThreadLocalRandom.current().nextInt(endpoints.length)];
+        }
+    }
+
+    /**
+     * 一个服务的监听
+     */
+    private static final class Watch {
+
+        private final String serviceName;
+
+        private final CompletableFuture<Snapshot> initialized = new CompletableFuture<>();
+
+        private volatile Snapshot snapshot;
+
+        private volatile Thread thread;
+
+        Watch(String serviceName) {
+            this.serviceName = serviceName;
+        }
+
+        void publish(Snapshot snapshot) {
+            this.snapshot = snapshot;
+            initialized.complete(snapshot);
+        }
+    }
+
+}
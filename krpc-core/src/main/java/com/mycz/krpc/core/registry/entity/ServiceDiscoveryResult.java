@@ -4,14 +4,42 @@ import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.net.InetSocketAddress;
+
 @Getter
 @Setter
 @Builder
 public class ServiceDiscoveryResult {
 
+    /**
+     * 未设置权重时的默认权重
+     */
+    public static final int DEFAULT_WEIGHT = 100;
+
     private String id;
     private String name;
     private String address;
     private Integer port;
+    private Integer weight; // 权重, 为空时使用默认权重
+    private InetSocketAddress socketAddress; // 预先解析的连接地址, 为空时按address和port创建
+
+    /**
+     * 生效的权重
+     */
+    public int weight() {
+        return weight == null ? DEFAULT_WEIGHT : Math.max(0, weight);
+    }
+
+    /**
+     * 连接地址, 首次使用时解析并缓存
+     */
+    public InetSocketAddress socketAddress() {
+        InetSocketAddress socketAddress = this.socketAddress;
+        if (socketAddress == null) {
+            socketAddress = new InetSocketAddress(address, port);
+            this.socketAddress = socketAddress;
+        }
+        return socketAddress;
+    }
 
 }
@@ -40,16 +40,41 @@ public class RpcConstants {
      */
     public static final byte HEARTBEAT_RESPONSE_TYPE = 4;
 
+    /**
+     * 服务端即将停机, 客户端收到后不再向该连接发送新请求
+     */
+    public static final byte GOAWAY_TYPE = 5;
+
     /**
      * codec kryo
      */
     public static final byte CODEC_KRYO = 1;
 
+    /**
+     * codec kryo unsafe
+     */
+    public static final byte CODEC_KRYO_UNSAFE = 2;
+
+    /**
+     * 不压缩
+     */
+    public static final byte COMPRESS_NONE = 0;
+
     /**
      * gzip
      */
     public static final byte COMPRESS_GZIP = 1;
 
+    /**
+     * lz4
+     */
+    public static final byte COMPRESS_LZ4 = 2;
+
+    /**
+     * zstd
+     */
+    public static final byte COMPRESS_ZSTD = 3;
+
     /**
      * 编码格式
      */
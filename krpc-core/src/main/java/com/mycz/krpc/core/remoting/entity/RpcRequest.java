@@ -31,5 +31,13 @@ public class RpcRequest implements Serializable {
     private String group;
     // 请求上下文
     private Map<String, Object> context;
+    // 方法id, 握手后代替接口名、方法名、参数类型
+    private Integer methodId;
+    // 是否请求服务端下发方法表
+    private Boolean handshake;
+    // 方法签名, 仅客户端本地使用, 不参与序列化
+    private transient String signature;
+    // 一致性哈希路由键, 仅客户端本地使用, 不参与序列化
+    private transient String routeKey;
 
 }
@@ -3,6 +3,7 @@ package com.mycz.krpc.core.remoting.entity;
 import lombok.*;
 
 import java.io.Serializable;
+import java.util.Map;
 
 @Getter
 @Setter
@@ -24,6 +25,10 @@ public class RpcResponse<T> implements Serializable {
      * response body
      */
     private T data;
+    /**
+     * 方法表(方法签名 -> 方法id), 仅在响应握手请求时携带
+     */
+    private Map<String, Integer> methodTable;
 
     public static <T> RpcResponse<T> success(T data, String traceId) {
         RpcResponse<T> response = new RpcResponse<>();
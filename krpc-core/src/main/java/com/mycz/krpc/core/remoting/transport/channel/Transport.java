@@ -0,0 +1,54 @@
+package com.mycz.krpc.core.remoting.transport.channel;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.socket.SocketChannel;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 网络传输实现: nio | epoll | io_uring
+ */
+public interface Transport {
+
+    /**
+     * 名称
+     */
+    String name();
+
+    /**
+     * 创建EventLoopGroup
+     *
+     * @param threads       线程数, 0表示使用netty默认值
+     * @param threadFactory 线程工厂
+     */
+    EventLoopGroup eventLoopGroup(int threads, ThreadFactory threadFactory);
+
+    /**
+     * 服务端channel类型
+     */
+    Class<? extends ServerChannel> serverChannelClass();
+
+    /**
+     * 客户端channel类型
+     */
+    Class<? extends SocketChannel> socketChannelClass();
+
+    /**
+     * 设置服务端特有的选项
+     *
+     * @param reusePort 是否开启SO_REUSEPORT, 仅epoll/io_uring支持
+     */
+    default void configure(ServerBootstrap bootstrap, boolean reusePort) {
+
+    }
+
+    /**
+     * 设置客户端特有的选项
+     */
+    default void configure(Bootstrap bootstrap) {
+
+    }
+}
@@ -0,0 +1,72 @@
+package com.mycz.krpc.core.remoting.transport.channel;
+
+import com.mycz.krpc.core.remoting.transport.channel.epoll.EpollTransport;
+import com.mycz.krpc.core.remoting.transport.channel.iouring.IoUringTransport;
+import com.mycz.krpc.core.remoting.transport.channel.nio.NioTransport;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Set;
+
+/**
+ * 按配置选择网络传输, 不可用时回退到nio
+ */
+@Slf4j
+public class TransportFactory {
+
+    /**
+     * 支持的传输方式
+     */
+    private static final Set<String> NAMES = Set.of("auto", "nio", "epoll", "io_uring");
+
+    private TransportFactory() {
+
+    }
+
+    /**
+     * 校验传输方式
+     */
+    public static void check(String name) {
+        if (!NAMES.contains(name.toLowerCase())) {
+            throw new IllegalArgumentException("不支持的传输方式: " + name);
+        }
+    }
+
+    /**
+     * 获取传输实现
+     *
+     * @param name auto(epoll可用时使用epoll, 否则nio) | nio | epoll | io_uring
+     */
+    public static Transport getTransport(String name) {
+        check(name);
+        switch (name.toLowerCase()) {
+            case "io_uring":
+                if (ioUringAvailable()) {
+                    return new IoUringTransport();
+                }
+                log.warn("*** krpc - io_uring不可用, 回退到nio");
+                return new NioTransport();
+            case "epoll":
+                if (EpollTransport.isAvailable()) {
+                    return new EpollTransport();
+                }
+                log.warn("*** krpc - epoll不可用, 回退到nio");
+                return new NioTransport();
+            case "auto":
+                return EpollTransport.isAvailable() ? new EpollTransport() : new NioTransport();
+            default:
+                return new NioTransport();
+        }
+    }
+
+    /**
+     * 未引入io_uring依赖时不能加载IoUringTransport
+     */
+    private static boolean ioUringAvailable() {
+        try {
+            Class.forName("io.netty.incubator.channel.uring.IOUring", false, TransportFactory.class.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+        return IoUringTransport.isAvailable();
+    }
+}
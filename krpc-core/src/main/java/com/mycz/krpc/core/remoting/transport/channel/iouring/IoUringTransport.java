@@ -0,0 +1,59 @@
+package com.mycz.krpc.core.remoting.transport.channel.iouring;
+
+import com.mycz.krpc.core.remoting.transport.channel.Transport;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringChannelOption;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
+import io.netty.incubator.channel.uring.IOUringSocketChannel;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * linux io_uring, 依赖netty-incubator-transport-native-io_uring(可选依赖)
+ */
+public class IoUringTransport implements Transport {
+
+    /**
+     * 调用前须确认已引入io_uring依赖
+     */
+    public static boolean isAvailable() {
+        return IOUring.isAvailable();
+    }
+
+    @Override
+    public String name() {
+        return "io_uring";
+    }
+
+    @Override
+    public EventLoopGroup eventLoopGroup(int threads, ThreadFactory threadFactory) {
+        return new IOUringEventLoopGroup(threads, threadFactory);
+    }
+
+    @Override
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return IOUringServerSocketChannel.class;
+    }
+
+    @Override
+    public Class<? extends SocketChannel> socketChannelClass() {
+        return IOUringSocketChannel.class;
+    }
+
+    @Override
+    public void configure(ServerBootstrap bootstrap, boolean reusePort) {
+        bootstrap.option(IOUringChannelOption.SO_REUSEPORT, reusePort)
+                .childOption(IOUringChannelOption.TCP_QUICKACK, true);
+    }
+
+    @Override
+    public void configure(Bootstrap bootstrap) {
+        bootstrap.option(IOUringChannelOption.TCP_QUICKACK, true);
+    }
+}
@@ -0,0 +1,37 @@
+package com.mycz.krpc.core.remoting.transport.channel.nio;
+
+import com.mycz.krpc.core.remoting.transport.channel.Transport;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * JDK NIO, 所有平台可用
+ */
+public class NioTransport implements Transport {
+
+    @Override
+    public String name() {
+        return "nio";
+    }
+
+    @Override
+    public EventLoopGroup eventLoopGroup(int threads, ThreadFactory threadFactory) {
+        return new NioEventLoopGroup(threads, threadFactory);
+    }
+
+    @Override
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return NioServerSocketChannel.class;
+    }
+
+    @Override
+    public Class<? extends SocketChannel> socketChannelClass() {
+        return NioSocketChannel.class;
+    }
+}
@@ -1,44 +1,175 @@
 package com.mycz.krpc.core.remoting.transport.client;
 
 import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * 连接池, 每个服务地址维护多条连接
+ */
 @Slf4j
 public class ChannelProvider {
 
-    private final Map<String, Channel> channelMap;
+    /**
+     * 连接上在途(已发送未响应)的请求数
+     */
+    public static final AttributeKey<AtomicInteger> PENDING = AttributeKey.valueOf("krpc.pending");
+
+    /**
+     * 连接所属的服务地址
+     */
+    private static final AttributeKey<String> ENDPOINT = AttributeKey.valueOf("krpc.endpoint");
+
+    /**
+     * 连接已收到服务端的GOAWAY
+     */
+    private static final AttributeKey<Boolean> DRAINING = AttributeKey.valueOf("krpc.draining");
+
+    /**
+     * 服务地址收到GOAWAY后多久内不再被选择, 期间与该地址重新建连成功时提前解除
+     */
+    private static final long DRAINING_MILLIS = 60_000;
+
+    private final Map<String, List<Channel>> channelMap;
+
+    /**
+     * 停机中的服务地址 -> 解除时间
+     */
+    private final Map<String, Long> drainingMap;
 
     public ChannelProvider() {
         channelMap = new ConcurrentHashMap<>();
+        drainingMap = new ConcurrentHashMap<>();
     }
 
+    /**
+     * 获取在途请求最少的可用连接, 没有可用连接时返回null
+     */
     public Channel get(InetSocketAddress inetSocketAddress) {
-        String key = inetSocketAddress.toString();
-        // determine if there is a connection for the corresponding address
-        if (channelMap.containsKey(key)) {
-            Channel channel = channelMap.get(key);
-            // if so, determine if the connection is available, and if so, get it directly
-            if (channel != null && channel.isActive()) {
-                return channel;
-            } else {
-                channelMap.remove(key);
+        List<Channel> channels = channelMap.get(inetSocketAddress.toString());
+        if (channels == null) {
+            return null;
+        }
+        Channel selected = null;
+        int minPending = Integer.MAX_VALUE;
+        for (Channel channel : channels) {
+            if (!channel.isActive()) {
+                continue;
+            }
+            int pending = pending(channel).get();
+            if (pending < minPending) {
+                selected = channel;
+                minPending = pending;
             }
         }
-        return null;
+        return selected;
     }
 
+    /**
+     * 加入连接池, 连接关闭时自动移除
+     */
     public void set(InetSocketAddress inetSocketAddress, Channel channel) {
         String key = inetSocketAddress.toString();
-        channelMap.put(key, channel);
+        channel.attr(PENDING).setIfAbsent(new AtomicInteger());
+        channel.attr(ENDPOINT).set(key);
+        // 能建立新连接说明服务已重新启动
+        drainingMap.remove(key);
+        channelMap.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(channel);
+        channel.closeFuture().addListener(future -> this.remove(channel));
     }
 
-    public void remove(InetSocketAddress inetSocketAddress) {
+    /**
+     * 从连接池移除
+     */
+    public void remove(Channel channel) {
+        String key = channel.attr(ENDPOINT).get();
+        List<Channel> channels = key == null ? null : channelMap.get(key);
+        if (channels != null && channels.remove(channel)) {
+            log.info("Channel pool [{}] size :[{}]", key, channels.size());
+        }
+    }
+
+    /**
+     * 服务端即将停机: 连接移出连接池不再发送新请求, 已发送的请求继续等待响应; 服务地址在一段时间内不再被选择
+     */
+    public void drain(Channel channel) {
+        channel.attr(DRAINING).set(true);
+        String key = channel.attr(ENDPOINT).get();
+        if (key != null) {
+            drainingMap.put(key, System.currentTimeMillis() + DRAINING_MILLIS);
+        }
+        this.remove(channel);
+    }
+
+    /**
+     * 连接是否已收到GOAWAY
+     */
+    public static boolean isDraining(Channel channel) {
+        return Boolean.TRUE.equals(channel.attr(DRAINING).get());
+    }
+
+    /**
+     * 服务地址是否在停机中
+     */
+    public boolean isDraining(InetSocketAddress inetSocketAddress) {
+        if (drainingMap.isEmpty()) {
+            return false;
+        }
         String key = inetSocketAddress.toString();
-        channelMap.remove(key);
-        log.info("Channel map size :[{}]", channelMap.size());
+        Long until = drainingMap.get(key);
+        if (until == null) {
+            return false;
+        }
+        if (until < System.currentTimeMillis()) {
+            drainingMap.remove(key, until);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 是否有停机中的服务地址
+     */
+    public boolean hasDraining() {
+        return !drainingMap.isEmpty();
+    }
+
+    /**
+     * 连接所属服务地址的连接数
+     */
+    public int size(Channel channel) {
+        String key = channel.attr(ENDPOINT).get();
+        List<Channel> channels = key == null ? null : channelMap.get(key);
+        return channels == null ? 0 : channels.size();
+    }
+
+    /**
+     * 服务地址的连接数
+     */
+    public int size(InetSocketAddress inetSocketAddress) {
+        List<Channel> channels = channelMap.get(inetSocketAddress.toString());
+        return channels == null ? 0 : channels.size();
+    }
+
+    /**
+     * 连接上的在途请求计数
+     */
+    public static AtomicInteger pending(Channel channel) {
+        AtomicInteger pending = channel.attr(PENDING).get();
+        if (pending == null) {
+            pending = new AtomicInteger();
+            AtomicInteger old = channel.attr(PENDING).setIfAbsent(pending);
+            if (old != null) {
+                pending = old;
+            }
+        }
+        return pending;
     }
 }
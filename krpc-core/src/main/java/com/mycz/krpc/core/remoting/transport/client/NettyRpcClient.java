@@ -3,31 +3,45 @@ package com.mycz.krpc.core.remoting.transport.client;
 import com.mycz.arch.common.util.JsonKit;
 import com.mycz.arch.common.util.RandomKit;
 import com.mycz.arch.common.util.StringKit;
+import com.mycz.krpc.core.config.RpcConfig;
 import com.mycz.krpc.core.factory.ApplicationContext;
+import com.mycz.krpc.core.loadbalance.EndpointStats;
+import com.mycz.krpc.core.loadbalance.LoadBalancer;
+import com.mycz.krpc.core.loadbalance.LoadBalancerFactory;
 import com.mycz.krpc.core.registry.ServiceDiscovery;
 import com.mycz.krpc.core.registry.entity.ServiceDiscoveryResult;
 import com.mycz.krpc.core.remoting.entity.RpcConstants;
 import com.mycz.krpc.core.remoting.entity.RpcMessage;
 import com.mycz.krpc.core.remoting.entity.RpcRequest;
 import com.mycz.krpc.core.remoting.entity.RpcResponse;
+import com.mycz.krpc.core.remoting.transport.channel.Transport;
 import com.mycz.krpc.core.remoting.transport.codec.RpcMessageDecoder;
 import com.mycz.krpc.core.remoting.transport.codec.RpcMessageEncoder;
+import com.mycz.krpc.core.remoting.transport.compress.CompressFactory;
+import com.mycz.krpc.core.serializer.SerializerFactory;
+import com.mycz.krpc.core.utils.MethodSignatureUtil;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -36,101 +50,451 @@ public class NettyRpcClient {
 
     private static final AtomicInteger ATOMIC_INTEGER = new AtomicInteger(0);
 
+    /**
+     * 不随请求发起的建连(同步获取连接)的超时时间
+     */
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * 连接上服务端下发的方法表: 方法签名 -> 方法id
+     */
+    public static final AttributeKey<Map<String, Integer>> METHOD_TABLE = AttributeKey.valueOf("krpc.methodTable");
+
+    /**
+     * 连接上是否已发起握手
+     */
+    private static final AttributeKey<Boolean> HANDSHAKE = AttributeKey.valueOf("krpc.handshake");
+
     private final ChannelProvider channelProvider;
+
+    /**
+     * 建连中的地址 -> 建连future
+     */
+    private final Map<String, CompletableFuture<Channel>> connectingMap = new ConcurrentHashMap<>();
     private final Bootstrap bootstrap;
 
+    /**
+     * 客户端IO线程
+     */
+    private final EventLoopGroup workerGroup;
+
+    /**
+     * 请求使用的压缩方式
+     */
+    private final byte compressType;
+
+    /**
+     * 请求默认使用的序列化方式
+     */
+    private final byte defaultCodec;
+
+    /**
+     * 按服务名指定的序列化方式
+     */
+    private final Map<String, Byte> serviceCodecs = new HashMap<>();
+
+    /**
+     * 默认负载均衡
+     */
+    private final LoadBalancer defaultLoadBalancer;
+
+    /**
+     * 按服务名指定的负载均衡
+     */
+    private final Map<String, LoadBalancer> serviceLoadBalancers = new HashMap<>();
+
+    /**
+     * 带@RouteKey的请求使用的负载均衡
+     */
+    private final LoadBalancer routeLoadBalancer;
+
+    /**
+     * 每个服务地址的最大连接数
+     */
+    private final int maxConnections;
+
+    /**
+     * 单条连接的在途请求数达到该值时新建连接
+     */
+    private final int maxPendingPerConnection;
+
+    /**
+     * 请求超时时间(毫秒)
+     */
+    private final long timeout;
+
     public NettyRpcClient() {
+        RpcConfig rpcConfig = ApplicationContext.getInstance(RpcConfig.class);
+        RpcConfig.Codec codec = rpcConfig.getCodec();
+        maxConnections = rpcConfig.getClient().getMaxConnections();
+        maxPendingPerConnection = rpcConfig.getClient().getMaxPendingPerConnection();
+        timeout = rpcConfig.getClient().getTimeout();
+        defaultLoadBalancer = LoadBalancerFactory.getLoadBalancer(rpcConfig.getClient().getLoadBalance());
+        routeLoadBalancer = LoadBalancerFactory.getLoadBalancer("ring-hash");
+        rpcConfig.getClient().getServiceLoadBalances().forEach((serviceName, loadBalance) -> serviceLoadBalancers.put(serviceName, LoadBalancerFactory.getLoadBalancer(loadBalance)));
+        compressType = CompressFactory.getType(codec.getCompress());
+        defaultCodec = SerializerFactory.getCodec(codec.getSerializer());
+        codec.getServiceSerializers().forEach((serviceName, serializer) -> serviceCodecs.put(serviceName, SerializerFactory.getCodec(serializer)));
         channelProvider = new ChannelProvider();
         bootstrap = new Bootstrap();
 
-        NioEventLoopGroup workerGroup = new NioEventLoopGroup();
+        Transport transport = ApplicationContext.getInstance(Transport.class);
+        workerGroup = transport.eventLoopGroup(0, new DefaultThreadFactory("krpc-client-io"));
 
         bootstrap.group(workerGroup) // 1.指定线程模型
-                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000) // 设置连接超时时间
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MILLIS) // 设置连接超时时间, 随请求发起的建连使用请求剩余时间
                 .option(ChannelOption.SO_KEEPALIVE, true)
                 .option(ChannelOption.TCP_NODELAY, true)
-                .channel(NioSocketChannel.class) // 2.指定 IO 类型为 NIO
+                .channel(transport.socketChannelClass()) // 2.指定 IO 类型
                 .handler(new ChannelInitializer<SocketChannel>() { // 3.IO 处理逻辑
                     @Override
                     public void initChannel(SocketChannel ch) {
+                        UnprocessedRequests.init(ch);
                         ch.pipeline().addLast(new IdleStateHandler(0, 5, 0, TimeUnit.SECONDS));
                         ch.pipeline().addLast(new RpcMessageEncoder());
                         ch.pipeline().addLast(new RpcMessageDecoder());
                         ch.pipeline().addLast(new NettyRpcClientHandler());
                     }
                 });
+        // 传输方式特有的客户端选项(epoll边缘触发、TCP_QUICKACK等)
+        transport.configure(bootstrap);
     }
 
-    public CompletableFuture<RpcResponse<Object>> sendRpcRequest(RpcRequest rpcRequest) throws Exception {
-        // 发现服务
+    public CompletableFuture<RpcResponse<?>> sendRpcRequest(RpcRequest rpcRequest) {
+        // 请求截止时间, 包含服务发现和建连耗时
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        CompletableFuture<RpcResponse<?>> resultFuture = new CompletableFuture<>();
+        // 从发起请求开始计时, 首次服务发现、获取连接、建连期间同样受超时约束
+        UnprocessedRequests.timeout(resultFuture, timeout);
+
+        // 携带上下文和ip, 须在调用线程上取值
+        rpcRequest.setContext(new HashMap<>(ApplicationContext.getContext()));
+        rpcRequest.setIp(ApplicationContext.getIp());
+        if (StringKit.isBlank(rpcRequest.getTraceId())) {
+            rpcRequest.setTraceId("df_" + RandomKit.randomString(RandomKit.CS_ALPHANUM, 6));
+        }
+
+        // 发现服务, 首次拉取未完成时在拉取完成后继续发送, 不阻塞调用线程
         ServiceDiscovery serviceDiscovery = ApplicationContext.getInstance(ServiceDiscovery.class);
-        ServiceDiscoveryResult service = serviceDiscovery.discovery(rpcRequest.getServiceName());
+        serviceDiscovery.instancesAsync(rpcRequest.getServiceName()).whenComplete((instances, e) -> {
+            if (e != null) {
+                resultFuture.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                return;
+            }
+            // 等待服务发现期间已超时
+            if (resultFuture.isDone()) {
+                return;
+            }
+            try {
+                this.route(rpcRequest, instances, resultFuture, deadline);
+            } catch (Exception ex) {
+                resultFuture.completeExceptionally(ex);
+            }
+        });
+        return resultFuture;
+    }
+
+    /**
+     * 选择实例后发送, 请求结束时更新实例统计供负载均衡使用
+     */
+    private void route(RpcRequest rpcRequest, List<ServiceDiscoveryResult> instances, CompletableFuture<RpcResponse<?>> resultFuture, long deadline) throws Exception {
+        String serviceName = rpcRequest.getServiceName();
+        if (instances == null || instances.isEmpty()) {
+            throw new Exception("无可用服务: " + serviceName);
+        }
+        instances = this.excludeDraining(instances);
+        // 带路由键的请求走一致性哈希, 相同键固定落到同一实例
+        LoadBalancer loadBalancer = rpcRequest.getRouteKey() != null ? routeLoadBalancer : serviceLoadBalancers.getOrDefault(serviceName, defaultLoadBalancer);
+        ServiceDiscoveryResult service = loadBalancer.select(serviceName, instances, rpcRequest);
 
-        CompletableFuture<RpcResponse<Object>> resultFuture = new CompletableFuture<>();
-        Channel channel = getChannel(new InetSocketAddress(service.getAddress(), service.getPort()));
+        EndpointStats stats = EndpointStats.of(service);
+        long start = stats.start();
+        resultFuture.whenComplete((response, e) -> stats.end(start));
+        byte codec = serviceCodecs.getOrDefault(serviceName, defaultCodec);
+        // 连接建立后再发送, 不阻塞调用线程
+        this.send(service.socketAddress(), rpcRequest, codec, resultFuture, deadline, false);
+    }
 
-        if (channel.isActive()) {
-            // 携带上下文和ip
-            rpcRequest.setContext(new HashMap<>(ApplicationContext.getContext()));
-            rpcRequest.setIp(ApplicationContext.getIp());
-            if (StringKit.isBlank(rpcRequest.getTraceId())) {
-                rpcRequest.setTraceId("df_" + RandomKit.randomString(RandomKit.CS_ALPHANUM, 6));
+    /**
+     * 获取连接后发送
+     *
+     * @param reselected 是否已因连接关闭重新选择过连接
+     */
+    private void send(InetSocketAddress address, RpcRequest rpcRequest, byte codec, CompletableFuture<RpcResponse<?>> resultFuture, long deadline, boolean reselected) {
+        this.getChannelAsync(address, deadline).whenComplete((channel, e) -> {
+            if (e != null) {
+                resultFuture.completeExceptionally(e);
+                return;
+            }
+            // 回调中的异常会被CompletableFuture吞掉, 须显式结束请求
+            try {
+                this.write(address, channel, rpcRequest, codec, resultFuture, deadline, reselected);
+            } catch (Throwable t) {
+                log.error("请求发送失败", t);
+                resultFuture.completeExceptionally(t);
             }
+        });
+    }
 
-            // 封装rpcMessage
-            RpcMessage rpcMessage = RpcMessage.builder()
-                    .magicNum(RpcConstants.MAGIC_NUMBER)
-                    .version(RpcConstants.VERSION)
-                    .messageType(RpcConstants.REQUEST_TYPE)
-                    .codec(RpcConstants.CODEC_KRYO)
-                    .compress(RpcConstants.COMPRESS_GZIP)
-                    .traceId(ATOMIC_INTEGER.getAndIncrement())
-                    .data(rpcRequest)
-                    .build();
-
-            channel.writeAndFlush(rpcMessage).addListener((ChannelFutureListener) future -> {
-                UnprocessedRequests unprocessedRequests = ApplicationContext.getInstance(UnprocessedRequests.class);
-                unprocessedRequests.put(rpcMessage.getTraceId(), resultFuture);
-                if (!future.isSuccess()) {
-                    future.channel().close();
-                    resultFuture.completeExceptionally(future.cause());
-                    log.error("请求发送失败", future.cause());
+    /**
+     * 发送请求
+     * 选中的连接在发送前被关闭(如空闲回收与本次选择并发)时重新选择一次连接, 不直接失败
+     */
+    private void write(InetSocketAddress address, Channel channel, RpcRequest rpcRequest, byte codec, CompletableFuture<RpcResponse<?>> resultFuture, long deadline, boolean reselected) {
+        Runnable reselect = reselected ? null : () -> this.send(address, rpcRequest, codec, resultFuture, deadline, true);
+        if (!channel.isActive()) {
+            this.channelClosed(reselect, resultFuture);
+            return;
+        }
+        // 按本连接的方法表生成发送的请求, 原请求保持完整, 重新选择连接时按新连接重新生成
+        RpcRequest wireRequest = this.compactRequest(channel, rpcRequest);
+        // 握手请求失败(超时、连接异常等)或未拿到方法表时, 允许后续请求重新握手
+        if (Boolean.TRUE.equals(wireRequest.getHandshake())) {
+            resultFuture.whenComplete((response, e) -> {
+                if (channel.attr(METHOD_TABLE).get() == null) {
+                    channel.attr(HANDSHAKE).set(null);
                 }
             });
+        }
+
+        // 封装rpcMessage
+        RpcMessage rpcMessage = RpcMessage.builder()
+                .magicNum(RpcConstants.MAGIC_NUMBER)
+                .version(RpcConstants.VERSION)
+                .messageType(RpcConstants.REQUEST_TYPE)
+                .codec(codec)
+                .compress(compressType)
+                .traceId(ATOMIC_INTEGER.getAndIncrement())
+                .data(wireRequest)
+                .build();
+
+        // 在途请求计数, 请求结束(响应、失败)时释放
+        AtomicInteger pending = ChannelProvider.pending(channel);
+        pending.incrementAndGet();
+        resultFuture.whenComplete((response, e) -> pending.decrementAndGet());
+
+        // 在EventLoop上先登记再写出, 超时在发起请求时已设置
+        if (channel.eventLoop().inEventLoop()) {
+            this.doWrite(channel, rpcMessage, resultFuture, reselect);
         } else {
-            log.error("Channel 已关闭");
+            channel.eventLoop().execute(() -> {
+                try {
+                    this.doWrite(channel, rpcMessage, resultFuture, reselect);
+                } catch (Throwable t) {
+                    log.error("请求发送失败", t);
+                    resultFuture.completeExceptionally(t);
+                }
+            });
         }
+    }
 
-        return resultFuture;
+    /**
+     * 登记并写出, 只在EventLoop上执行
+     * 空闲回收也在EventLoop上关闭连接, 此处看到的连接状态与回收判断一致
+     */
+    private void doWrite(Channel channel, RpcMessage rpcMessage, CompletableFuture<RpcResponse<?>> resultFuture, Runnable reselect) {
+        if (!channel.isActive()) {
+            this.channelClosed(reselect, resultFuture);
+            return;
+        }
+        UnprocessedRequests unprocessedRequests = UnprocessedRequests.of(channel);
+        unprocessedRequests.put(rpcMessage.getTraceId(), resultFuture);
+
+        channel.writeAndFlush(rpcMessage).addListener((ChannelFutureListener) future -> {
+            if (!future.isSuccess()) {
+                future.channel().close();
+                unprocessedRequests.fail(rpcMessage.getTraceId(), future.cause());
+                log.error("请求发送失败", future.cause());
+            }
+        });
     }
 
-    public Channel getChannel(InetSocketAddress inetSocketAddress) {
+    /**
+     * 连接已关闭: 未重选过时重新选择连接, 否则请求失败
+     */
+    private void channelClosed(Runnable reselect, CompletableFuture<RpcResponse<?>> resultFuture) {
+        if (reselect != null) {
+            reselect.run();
+            return;
+        }
+        log.error("Channel 已关闭");
+        resultFuture.completeExceptionally(new IllegalStateException("Channel 已关闭"));
+    }
+
+    /**
+     * 生成在该连接上发送的请求: 连接已握手时用方法id代替接口名、方法名、参数类型; 未握手时随本次请求发起握手
+     * 需要改写时返回副本, 不修改原请求, 方法id只对该连接对端的方法表有效
+     */
+    private RpcRequest compactRequest(Channel channel, RpcRequest rpcRequest) {
+        Map<String, Integer> methodTable = channel.attr(METHOD_TABLE).get();
+        if (methodTable == null) {
+            if (channel.attr(HANDSHAKE).setIfAbsent(true) == null) {
+                RpcRequest handshake = copy(rpcRequest);
+                handshake.setHandshake(true);
+                return handshake;
+            }
+            return rpcRequest;
+        }
+
+        String signature = rpcRequest.getSignature();
+        if (signature == null) {
+            signature = MethodSignatureUtil.signature(rpcRequest.getInterfaceName(), rpcRequest.getMethodName(), rpcRequest.getParamTypes());
+        }
+        Integer methodId = methodTable.get(signature);
+        if (methodId == null) {
+            return rpcRequest;
+        }
+        return RpcRequest.builder()
+                .ip(rpcRequest.getIp())
+                .traceId(rpcRequest.getTraceId())
+                .parameters(rpcRequest.getParameters())
+                .context(rpcRequest.getContext())
+                .methodId(methodId)
+                .build();
+    }
+
+    private static RpcRequest copy(RpcRequest rpcRequest) {
+        return RpcRequest.builder()
+                .ip(rpcRequest.getIp())
+                .traceId(rpcRequest.getTraceId())
+                .serviceName(rpcRequest.getServiceName())
+                .interfaceName(rpcRequest.getInterfaceName())
+                .methodName(rpcRequest.getMethodName())
+                .paramTypes(rpcRequest.getParamTypes())
+                .parameters(rpcRequest.getParameters())
+                .version(rpcRequest.getVersion())
+                .group(rpcRequest.getGroup())
+                .context(rpcRequest.getContext())
+                .methodId(rpcRequest.getMethodId())
+                .build();
+    }
+
+    /**
+     * 获取连接: 优先使用在途请求最少的连接, 所有连接都繁忙且未达上限时在后台新建连接
+     * 没有可用连接时返回该地址共享的建连future, 并发请求只会建立一条连接
+     */
+    public CompletableFuture<Channel> getChannelAsync(InetSocketAddress inetSocketAddress) {
+        return this.getChannelAsync(inetSocketAddress, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CONNECT_TIMEOUT_MILLIS));
+    }
+
+    /**
+     * 获取连接, 需要建连时建连超时取请求剩余时间
+     *
+     * @param deadline 请求截止时间(System.nanoTime)
+     */
+    private CompletableFuture<Channel> getChannelAsync(InetSocketAddress inetSocketAddress, long deadline) {
         Channel channel = channelProvider.get(inetSocketAddress);
         if (channel == null) {
-            channel = doConnect(inetSocketAddress);
-            channelProvider.set(inetSocketAddress, channel);
+            return this.connect(inetSocketAddress, deadline);
+        }
+        if (ChannelProvider.pending(channel).get() >= maxPendingPerConnection
+                && channelProvider.size(inetSocketAddress) < maxConnections) {
+            // 扩容不等待, 本次请求仍使用已有连接
+            this.connect(inetSocketAddress, deadline);
         }
-        return channel;
+        return CompletableFuture.completedFuture(channel);
     }
 
-    public Channel doConnect(InetSocketAddress inetSocketAddress) {
+    /**
+     * 同步获取连接
+     */
+    public Channel getChannel(InetSocketAddress inetSocketAddress) {
+        return this.getChannelAsync(inetSocketAddress).join();
+    }
+
+    /**
+     * 异步建立连接, 同一地址同时只有一个建连过程
+     */
+    private CompletableFuture<Channel> connect(InetSocketAddress inetSocketAddress, long deadline) {
+        String key = inetSocketAddress.toString();
         CompletableFuture<Channel> completableFuture = new CompletableFuture<>();
-        bootstrap.connect(inetSocketAddress).addListener((ChannelFutureListener) future -> {
+        CompletableFuture<Channel> connecting = connectingMap.putIfAbsent(key, completableFuture);
+        if (connecting != null) {
+            return connecting;
+        }
+        int connectTimeout = (int) Math.min(CONNECT_TIMEOUT_MILLIS, Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        bootstrap.clone().option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout).connect(inetSocketAddress).addListener((ChannelFutureListener) future -> {
             if (future.isSuccess()) {
+                channelProvider.set(inetSocketAddress, future.channel());
+                connectingMap.remove(key, completableFuture);
                 completableFuture.complete(future.channel());
             } else {
+                connectingMap.remove(key, completableFuture);
+                log.error("*** krpc - 连接失败: {}", inetSocketAddress, future.cause());
                 completableFuture.completeExceptionally(future.cause());
             }
         });
+        return completableFuture;
+    }
 
-        Channel channel;
-        try {
-            channel = completableFuture.get();
-        } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException(e);
+    /**
+     * 连接写空闲: 没有在途请求的多余连接直接关闭, 保留的最后一条连接发送心跳维持
+     */
+    public void onIdle(Channel channel) {
+        // 已收到GOAWAY的连接在途请求结束后关闭
+        if (ChannelProvider.isDraining(channel)) {
+            if (ChannelProvider.pending(channel).get() == 0) {
+                channel.close();
+            }
+            return;
+        }
+        if (ChannelProvider.pending(channel).get() == 0 && channelProvider.size(channel) > 1) {
+            channelProvider.remove(channel);
+            channel.close();
+            return;
         }
+        RpcMessage rpcMessage = RpcMessage.builder()
+                .magicNum(RpcConstants.MAGIC_NUMBER)
+                .version(RpcConstants.VERSION)
+                .messageType(RpcConstants.HEARTBEAT_REQUEST_TYPE)
+                .codec(defaultCodec)
+                .compress(RpcConstants.COMPRESS_NONE)
+                .traceId(ATOMIC_INTEGER.getAndIncrement())
+                .build();
+        channel.writeAndFlush(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+    }
 
-        return channel;
+    /**
+     * 当前线程是否为客户端IO线程
+     */
+    public boolean inEventLoop() {
+        for (EventExecutor executor : workerGroup) {
+            if (executor.inEventLoop()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 请求超时时间(毫秒)
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * 服务端通知即将停机, 在途请求仍在该连接上等待响应
+     */
+    public void onGoaway(Channel channel) {
+        log.info("*** krpc - 服务端即将停机: {}", channel.remoteAddress());
+        channelProvider.drain(channel);
+    }
+
+    /**
+     * 排除停机中的实例, 注册中心尚未通知下线前不再选择它们; 全部停机中时保留原列表
+     */
+    private List<ServiceDiscoveryResult> excludeDraining(List<ServiceDiscoveryResult> instances) {
+        if (!channelProvider.hasDraining()) {
+            return instances;
+        }
+        List<ServiceDiscoveryResult> available = new ArrayList<>(instances.size());
+        for (ServiceDiscoveryResult instance : instances) {
+            if (!channelProvider.isDraining(instance.socketAddress())) {
+                available.add(instance);
+            }
+        }
+        return available.isEmpty() || available.size() == instances.size() ? instances : available;
     }
 
 }
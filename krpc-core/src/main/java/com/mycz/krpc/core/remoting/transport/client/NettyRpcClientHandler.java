@@ -6,10 +6,14 @@ import com.mycz.krpc.core.remoting.entity.RpcMessage;
 import com.mycz.krpc.core.remoting.entity.RpcResponse;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.Collections;
 
 @Slf4j
 public class NettyRpcClientHandler extends ChannelInboundHandlerAdapter {
@@ -23,9 +27,14 @@ public class NettyRpcClientHandler extends ChannelInboundHandlerAdapter {
                     //
 
                 } else if (messageType == RpcConstants.RESPONSE_TYPE) {
-//                    RpcResponse<Object> rpcResponse = (RpcResponse<Object>) tmp.getData();
-                    UnprocessedRequests unprocessedRequests = ApplicationContext.getInstance(UnprocessedRequests.class);
-                    unprocessedRequests.complete(tmp);
+                    // 握手响应, 保存方法表
+                    if (tmp.getData() instanceof RpcResponse<?> rpcResponse && rpcResponse.getMethodTable() != null) {
+                        ctx.channel().attr(NettyRpcClient.METHOD_TABLE).set(Collections.unmodifiableMap(rpcResponse.getMethodTable()));
+                    }
+                    UnprocessedRequests.of(ctx.channel()).complete(tmp);
+                } else if (messageType == RpcConstants.GOAWAY_TYPE) {
+                    // 服务端即将停机, 不再使用该连接
+                    ApplicationContext.getInstance(NettyRpcClient.class).onGoaway(ctx.channel());
                 }
             }
         } catch (Exception e) {
@@ -35,6 +44,27 @@ public class NettyRpcClientHandler extends ChannelInboundHandlerAdapter {
         }
     }
 
+    /**
+     * 连接关闭时结束该连接上的在途请求, 调用方无需等到超时
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        UnprocessedRequests.of(ctx.channel()).failAll(new ClosedChannelException());
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * 写空闲时回收多余连接或发送心跳
+     */
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent event && event.state() == IdleState.WRITER_IDLE) {
+            ApplicationContext.getInstance(NettyRpcClient.class).onIdle(ctx.channel());
+        } else {
+            super.userEventTriggered(ctx, evt);
+        }
+    }
+
     /**
      * 处理上一个ChannelHandler传下来的异常
      */
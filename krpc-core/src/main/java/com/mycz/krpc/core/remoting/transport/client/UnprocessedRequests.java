@@ -2,27 +2,132 @@ package com.mycz.krpc.core.remoting.transport.client;
 
 import com.mycz.krpc.core.remoting.entity.RpcMessage;
 import com.mycz.krpc.core.remoting.entity.RpcResponse;
+import com.mycz.krpc.core.utils.ThreadPoolFactoryUtil;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * 单条连接上的在途请求, 收到响应、超时、连接关闭任一发生时移除
+ * 每条连接一个实例, 只在该连接的EventLoop上访问, 无需加锁
+ */
 @Slf4j
 public class UnprocessedRequests {
 
-    private final Map<Integer, CompletableFuture<RpcResponse<Object>>> futureMap = new ConcurrentHashMap<>();
+    /**
+     * 连接上的在途请求表
+     */
+    private static final AttributeKey<UnprocessedRequests> UNPROCESSED_REQUESTS = AttributeKey.valueOf("krpc.unprocessedRequests");
 
-    public void put(int traceId, CompletableFuture<RpcResponse<Object>> future) {
-        futureMap.put(traceId, future);
+    /**
+     * 请求超时时间轮, 精度10ms, 每个请求在发起时登记一次
+     */
+    private static final HashedWheelTimer TIMER = new HashedWheelTimer(
+            ThreadPoolFactoryUtil.createThreadFactory("krpc-request-timeout", true), 10, TimeUnit.MILLISECONDS);
+
+    private final Channel channel;
+
+    /**
+     * 消息id -> 请求, 开放寻址的int map, 无装箱
+     */
+    private final IntObjectMap<CompletableFuture<RpcResponse<?>>> requestMap = new IntObjectHashMap<>();
+
+    private UnprocessedRequests(Channel channel) {
+        this.channel = channel;
     }
 
-    public void complete(RpcMessage rpcMessage) {
-        CompletableFuture<RpcResponse<Object>> future = futureMap.remove(rpcMessage.getTraceId());
+    /**
+     * 为连接创建在途请求表, 在ChannelInitializer中调用
+     */
+    public static void init(Channel channel) {
+        channel.attr(UNPROCESSED_REQUESTS).set(new UnprocessedRequests(channel));
+    }
+
+    /**
+     * 连接上的在途请求表
+     */
+    public static UnprocessedRequests of(Channel channel) {
+        return channel.attr(UNPROCESSED_REQUESTS).get();
+    }
+
+    /**
+     * 登记请求, 须在EventLoop上且在写出之前调用, 避免响应先于登记到达
+     * 请求以任何方式结束(响应、发起时设置的超时、连接关闭)时移除
+     *
+     * @param traceId 消息id
+     * @param future  请求future
+     */
+    public void put(int traceId, CompletableFuture<RpcResponse<?>> future) {
+        requestMap.put(traceId, future);
+        future.whenComplete((response, e) -> {
+            if (channel.eventLoop().inEventLoop()) {
+                this.remove(traceId, future);
+                return;
+            }
+            try {
+                channel.eventLoop().execute(() -> this.remove(traceId, future));
+            } catch (RejectedExecutionException ex) {
+                // EventLoop已关闭, 请求表随连接丢弃
+            }
+        });
+    }
+
+    /**
+     * 请求的总超时, 从发起请求开始计时, 覆盖获取连接、建连和等待响应; 请求结束时取消
+     */
+    public static void timeout(CompletableFuture<RpcResponse<?>> future, long timeoutMillis) {
+        Timeout timeout = TIMER.newTimeout(t -> future.completeExceptionally(new TimeoutException("请求超时: " + timeoutMillis + "ms")),
+                timeoutMillis, TimeUnit.MILLISECONDS);
+        future.whenComplete((response, e) -> timeout.cancel());
+    }
+
+    /**
+     * 以异常结束请求
+     */
+    public void fail(int traceId, Throwable cause) {
+        CompletableFuture<RpcResponse<?>> future = requestMap.remove(traceId);
         if (future != null) {
-            future.complete((RpcResponse<Object>) rpcMessage.getData());
+            future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * 连接关闭时结束所有在途请求
+     */
+    public void failAll(Throwable cause) {
+        List<CompletableFuture<RpcResponse<?>>> futures = new ArrayList<>(requestMap.values());
+        requestMap.clear();
+        for (CompletableFuture<RpcResponse<?>> future : futures) {
+            future.completeExceptionally(cause);
+        }
+    }
+
+    public void complete(RpcMessage rpcMessage) {
+        CompletableFuture<RpcResponse<?>> future = requestMap.remove(rpcMessage.getTraceId());
+        if (future == null) {
+            // 已超时或连接已关闭的请求
+            log.warn("*** krpc - 响应未找到对应请求, 可能已超时: {}", rpcMessage.getTraceId());
+        } else if (rpcMessage.getData() instanceof RpcResponse<?> response) {
+            future.complete(response);
         } else {
-            throw new IllegalStateException();
+            future.completeExceptionally(new IllegalStateException("响应消息体解析失败"));
+        }
+    }
+
+    private void remove(int traceId, CompletableFuture<RpcResponse<?>> future) {
+        if (requestMap.get(traceId) == future) {
+            requestMap.remove(traceId);
         }
     }
 
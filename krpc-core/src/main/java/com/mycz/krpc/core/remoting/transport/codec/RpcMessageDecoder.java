@@ -1,31 +1,51 @@
 package com.mycz.krpc.core.remoting.transport.codec;
 
+import com.mycz.krpc.core.capture.CaptureLog;
 import com.mycz.krpc.core.remoting.entity.RpcConstants;
 import com.mycz.krpc.core.remoting.entity.RpcMessage;
 import com.mycz.krpc.core.remoting.entity.RpcRequest;
 import com.mycz.krpc.core.remoting.entity.RpcResponse;
-import com.mycz.krpc.core.remoting.transport.compress.gzip.GzipCompress;
-import com.mycz.krpc.core.serializer.kryo.KryoSerializer;
+import com.mycz.krpc.core.remoting.transport.compress.CompressFactory;
+import com.mycz.krpc.core.serializer.Serializer;
+import com.mycz.krpc.core.serializer.SerializerFactory;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.Arrays;
+import java.io.InputStream;
 
 /**
  * rpc消息解码
+ * <p>
+ * 未压缩的消息体直接从帧ByteBuf反序列化, 压缩的消息体解压到池化的缓冲区后反序列化, 不产生中间byte[]; 解压、反序列化方式分别由消息头的compress、codec字节决定
  */
 @Slf4j
 public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
 
+    /**
+     * 请求录制, 为空时不录制
+     */
+    private final CaptureLog captureLog;
+
     public RpcMessageDecoder() {
-        this(8 * 1024 * 1024, 12, 4, -16, 0);
+        this(null);
+    }
+
+    /**
+     * 服务端解码, 完整的请求帧在解码前写入录制文件
+     */
+    public RpcMessageDecoder(CaptureLog captureLog) {
+        super(8 * 1024 * 1024, 12, 4, -16, 0);
+        this.captureLog = captureLog;
     }
 
     public RpcMessageDecoder(int maxFrameLength, int lengthFieldOffset, int lengthFieldLength,
                              int lengthAdjustment, int initialBytesToStrip) {
         super(maxFrameLength, lengthFieldOffset, lengthFieldLength, lengthAdjustment, initialBytesToStrip);
+        this.captureLog = null;
     }
 
     @Override
@@ -44,8 +64,11 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
         Object decoded = super.decode(ctx, in);
         if (decoded instanceof ByteBuf frame) {
             if (frame.readableBytes() >= 16) {
+                if (captureLog != null) {
+                    captureLog.capture(frame);
+                }
                 try {
-                    return decodeFrame(frame);
+                    return decodeFrame(ctx, frame);
                 } finally {
                     frame.release();
                 }
@@ -54,7 +77,7 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
         return decoded;
     }
 
-    private Object decodeFrame(ByteBuf in) throws Exception {
+    private Object decodeFrame(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
         // 检查魔数
         checkMagicNumber(in);
 
@@ -69,19 +92,34 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
 
         int fullLength = in.readInt();
         int bodyLength = fullLength - RpcConstants.HEAD_LENGTH;
-        byte[] body = new byte[bodyLength];
-        in.readBytes(body);
-        byte[] decompressBody = new GzipCompress().decompress(body);
 
         Object data = null;
-        try {
-            if (RpcConstants.REQUEST_TYPE == rpcMessage.getMessageType()) {
-                data = new KryoSerializer().deserialize(decompressBody, RpcRequest.class);
-            } else if (RpcConstants.RESPONSE_TYPE == rpcMessage.getMessageType()) {
-                data = new KryoSerializer().deserialize(decompressBody, RpcResponse.class);
+        Class<?> bodyClass = null;
+        if (RpcConstants.REQUEST_TYPE == rpcMessage.getMessageType()) {
+            bodyClass = RpcRequest.class;
+        } else if (RpcConstants.RESPONSE_TYPE == rpcMessage.getMessageType()) {
+            bodyClass = RpcResponse.class;
+        }
+        if (bodyClass != null && bodyLength > 0) {
+            Serializer serializer = SerializerFactory.getSerializer(rpcMessage.getCodec());
+            if (rpcMessage.getCompress() == RpcConstants.COMPRESS_NONE) {
+                try (InputStream bodyIs = new ByteBufInputStream(in, bodyLength)) {
+                    data = serializer.deserialize(bodyIs, bodyClass);
+                } catch (Exception e) {
+                    log.error("[RpcMessageDecoder][DecodeFrame] - 消息体解析失败", e);
+                }
+            } else {
+                // 解压到池化的缓冲区, 再从缓冲区反序列化
+                ByteBuf body = ctx.alloc().directBuffer();
+                try {
+                    CompressFactory.getCompress(rpcMessage.getCompress()).decompress(in.readSlice(bodyLength), body);
+                    data = serializer.deserialize(new ByteBufInputStream(body), bodyClass);
+                } catch (Exception e) {
+                    log.error("[RpcMessageDecoder][DecodeFrame] - 消息体解析失败", e);
+                } finally {
+                    body.release();
+                }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
 
         rpcMessage.setData(data);
@@ -89,14 +127,11 @@ public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
         return rpcMessage;
     }
 
-    private void checkMagicNumber(ByteBuf in) throws Exception {
-//        throw new ClassNotFoundException();
+    private void checkMagicNumber(ByteBuf in) {
         int len = RpcConstants.MAGIC_NUMBER.length;
-        byte[] tmp = new byte[len];
-        in.readBytes(tmp);
         for (int i = 0; i < len; i++) {
-            if (tmp[i] != RpcConstants.MAGIC_NUMBER[i]) {
-                throw new IllegalArgumentException("Unknown magic code: " + Arrays.toString(tmp));
+            if (in.readByte() != RpcConstants.MAGIC_NUMBER[i]) {
+                throw new IllegalArgumentException("Unknown magic code: " + ByteBufUtil.hexDump(in, in.readerIndex() - i - 1, len));
             }
         }
     }
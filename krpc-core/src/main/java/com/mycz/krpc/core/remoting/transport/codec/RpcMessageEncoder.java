@@ -1,48 +1,153 @@
 package com.mycz.krpc.core.remoting.transport.codec;
 
+import com.mycz.krpc.core.config.RpcConfig;
+import com.mycz.krpc.core.factory.ApplicationContext;
 import com.mycz.krpc.core.remoting.entity.RpcConstants;
 import com.mycz.krpc.core.remoting.entity.RpcMessage;
-import com.mycz.krpc.core.remoting.transport.compress.gzip.GzipCompress;
-import com.mycz.krpc.core.serializer.kryo.KryoSerializer;
+import com.mycz.krpc.core.remoting.transport.compress.CompressFactory;
+import com.mycz.krpc.core.serializer.Serializer;
+import com.mycz.krpc.core.serializer.SerializerFactory;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+
 /**
  * rpc消息编码
+ * <p>
+ * 消息体经序列化、压缩后写入out(池化的直接内存), 不产生中间byte[], 需要压缩时原始消息体暂存在本连接复用的缓冲区; 消息总长度在写完消息体后回填
  */
 @Slf4j
 public class RpcMessageEncoder extends MessageToByteEncoder<RpcMessage> {
 
+    /**
+     * 保留复用的缓冲区最大容量
+     */
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+    /**
+     * 消息体小于该字节数时不压缩, 0表示总是压缩
+     */
+    private final int compressThreshold;
+
+    /**
+     * 待压缩的原始消息体
+     */
+    private ByteBuf raw;
+
+    public RpcMessageEncoder() {
+        this(configuredCompressThreshold());
+    }
+
+    public RpcMessageEncoder(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
     @Override
-    protected void encode(ChannelHandlerContext ctx, RpcMessage rpcMessage, ByteBuf out) {
+    protected void encode(ChannelHandlerContext ctx, RpcMessage rpcMessage, ByteBuf out) throws Exception {
+        int startIndex = out.writerIndex();
         try {
             // 消息头
             out.writeBytes(rpcMessage.getMagicNum()); // 4B
             out.writeByte(rpcMessage.getVersion()); // 1B
             out.writeByte(rpcMessage.getMessageType()); // 1B
             out.writeByte(rpcMessage.getCodec()); // 1B
+            int compressIndex = out.writerIndex();
             out.writeByte(rpcMessage.getCompress()); // 1B
             out.writeInt(rpcMessage.getTraceId()); // 4B
 
-            byte[] bodyBytes = null;
-            int fullLength = out.writerIndex() + 4;
-            if (rpcMessage.getMessageType() != RpcConstants.HEARTBEAT_REQUEST_TYPE && rpcMessage.getMessageType() != RpcConstants.HEARTBEAT_RESPONSE_TYPE) {
-                bodyBytes = new KryoSerializer().serialize(rpcMessage.getData());
-                bodyBytes = new GzipCompress().compress(bodyBytes);
-                fullLength += bodyBytes.length;
+            // 消息总长度, 先占位, 写完消息体后回填
+            int lengthIndex = out.writerIndex();
+            out.writeInt(0); // 4B
+
+            // 消息体, 实际使用的压缩方式回填到消息头; 心跳和GOAWAY没有消息体
+            byte messageType = rpcMessage.getMessageType();
+            if (messageType == RpcConstants.REQUEST_TYPE || messageType == RpcConstants.RESPONSE_TYPE) {
+                out.setByte(compressIndex, this.encodeBody(rpcMessage, out));
             }
 
-            // 消息总长度
-            out.writeInt(fullLength);
+            out.setInt(lengthIndex, out.writerIndex() - startIndex);
+        } catch (Exception e) {
+            // 丢弃写了一半的消息, 由上层写入失败处理
+            out.writerIndex(startIndex);
+            log.error("[RpcMessageEncoder][Encode] - ", e);
+            throw e;
+        }
+    }
 
-            // 消息体
-            if (bodyBytes != null) {
-                out.writeBytes(bodyBytes);
+    /**
+     * 写入消息体, 返回实际使用的压缩方式
+     */
+    private byte encodeBody(RpcMessage rpcMessage, ByteBuf out) throws IOException {
+        Serializer serializer = SerializerFactory.getSerializer(rpcMessage.getCodec());
+        byte compressType = rpcMessage.getCompress();
+        if (compressType == RpcConstants.COMPRESS_NONE) {
+            serializer.serialize(rpcMessage.getData(), new ByteBufOutputStream(out));
+            return compressType;
+        }
+
+        ByteBuf raw = this.raw(out.alloc());
+        try {
+            if (compressThreshold > 0) {
+                // 先直接序列化到out, 小于阈值时原样发送
+                int bodyIndex = out.writerIndex();
+                serializer.serialize(rpcMessage.getData(), new ByteBufOutputStream(out));
+                int bodyLength = out.writerIndex() - bodyIndex;
+                if (bodyLength < compressThreshold) {
+                    return RpcConstants.COMPRESS_NONE;
+                }
+                // 达到阈值, 把原始消息体移到缓冲区, 再压缩写回out
+                raw.writeBytes(out, bodyIndex, bodyLength);
+                out.writerIndex(bodyIndex);
+            } else {
+                serializer.serialize(rpcMessage.getData(), new ByteBufOutputStream(raw));
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            CompressFactory.getCompress(compressType).compress(raw, out);
+        } finally {
+            this.releaseRaw();
+        }
+        return compressType;
+    }
+
+    /**
+     * 本连接复用的原始消息体缓冲区, 编码只在连接的EventLoop上执行
+     */
+    private ByteBuf raw(ByteBufAllocator alloc) {
+        if (raw == null) {
+            raw = alloc.directBuffer();
+        }
+        return raw;
+    }
+
+    /**
+     * 清空缓冲区, 偶尔的大消息撑大的缓冲区不保留
+     */
+    private void releaseRaw() {
+        if (raw.capacity() > MAX_RETAINED_CAPACITY) {
+            raw.release();
+            raw = null;
+        } else {
+            raw.clear();
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        if (raw != null) {
+            raw.release();
+            raw = null;
+        }
+    }
+
+    private static int configuredCompressThreshold() {
+        RpcConfig rpcConfig = ApplicationContext.getInstance(RpcConfig.class);
+        if (rpcConfig == null || rpcConfig.getCodec() == null || rpcConfig.getCodec().getCompressThreshold() == null) {
+            return 0;
         }
+        return rpcConfig.getCodec().getCompressThreshold();
     }
 }
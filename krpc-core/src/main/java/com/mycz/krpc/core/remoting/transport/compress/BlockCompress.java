@@ -0,0 +1,103 @@
+package com.mycz.krpc.core.remoting.transport.compress;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 整块压缩: 消息体一次性压缩、解压, 压缩上下文由实现类池化复用; 字节数组和流接口都转为ByteBuf接口, 保证各接口的输出格式一致
+ */
+public abstract class BlockCompress implements Compress {
+
+    private final String name;
+
+    protected BlockCompress(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public abstract void compress(ByteBuf src, ByteBuf dst) throws IOException;
+
+    @Override
+    public abstract void decompress(ByteBuf src, ByteBuf dst) throws IOException;
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        ByteBuf dst = Unpooled.buffer(bytes.length / 2 + 64);
+        try {
+            this.compress(Unpooled.wrappedBuffer(bytes), dst);
+        } catch (IOException e) {
+            throw new RuntimeException(name + " compress error", e);
+        }
+        return ByteBufUtil.getBytes(dst);
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        ByteBuf dst = Unpooled.buffer(bytes.length * 2 + 64);
+        try {
+            this.decompress(Unpooled.wrappedBuffer(bytes), dst);
+        } catch (IOException e) {
+            throw new RuntimeException(name + " decompress error", e);
+        }
+        return ByteBufUtil.getBytes(dst);
+    }
+
+    /**
+     * 写入的数据先缓存, 关闭时整块压缩后写入out并关闭out
+     */
+    @Override
+    public OutputStream compress(OutputStream out) {
+        if (out == null) {
+            throw new NullPointerException("out is null");
+        }
+        ByteBuf raw = Unpooled.buffer();
+        return new ByteBufOutputStream(raw) {
+
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                ByteBuf dst = Unpooled.buffer(raw.readableBytes() / 2 + 64);
+                BlockCompress.this.compress(raw, dst);
+                dst.readBytes(out, dst.readableBytes());
+                out.close();
+            }
+        };
+    }
+
+    /**
+     * 读取in的全部数据后整块解压
+     */
+    @Override
+    public InputStream decompress(InputStream in) {
+        if (in == null) {
+            throw new NullPointerException("in is null");
+        }
+        try {
+            byte[] bytes = in.readAllBytes();
+            ByteBuf dst = Unpooled.buffer(bytes.length * 2 + 64);
+            this.decompress(Unpooled.wrappedBuffer(bytes), dst);
+            return new ByteBufInputStream(dst, true);
+        } catch (IOException e) {
+            throw new RuntimeException(name + " decompress error", e);
+        }
+    }
+
+}
@@ -1,9 +1,47 @@
 package com.mycz.krpc.core.remoting.transport.compress;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 public interface Compress {
 
     byte[] compress(byte[] bytes);
 
     byte[] decompress(byte[] bytes);
 
+    /**
+     * 包装输出流, 写入的数据压缩后输出到out, 关闭返回的流时完成压缩
+     */
+    OutputStream compress(OutputStream out);
+
+    /**
+     * 包装输入流, 从返回的流中读取in解压后的数据
+     */
+    InputStream decompress(InputStream in);
+
+    /**
+     * 压缩src的全部可读字节, 追加写入dst, src与dst不能共用内存; 默认经压缩流实现, 实现类可覆盖以复用压缩上下文
+     */
+    default void compress(ByteBuf src, ByteBuf dst) throws IOException {
+        try (OutputStream os = compress(new ByteBufOutputStream(dst))) {
+            src.readBytes(os, src.readableBytes());
+        }
+    }
+
+    /**
+     * 解压src的全部可读字节, 追加写入dst
+     */
+    default void decompress(ByteBuf src, ByteBuf dst) throws IOException {
+        try (InputStream is = decompress(new ByteBufInputStream(src, src.readableBytes()))) {
+            while (dst.writeBytes(is, 8192) > 0) {
+                // 读到流结束
+            }
+        }
+    }
+
 }
@@ -0,0 +1,68 @@
+package com.mycz.krpc.core.remoting.transport.compress;
+
+import com.mycz.krpc.core.remoting.entity.RpcConstants;
+import com.mycz.krpc.core.remoting.transport.compress.gzip.GzipCompress;
+import com.mycz.krpc.core.remoting.transport.compress.lz4.Lz4Compress;
+import com.mycz.krpc.core.remoting.transport.compress.none.NoneCompress;
+import com.mycz.krpc.core.remoting.transport.compress.zstd.ZstdCompress;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 压缩方式注册表, 按消息头中的compress字节查找实现
+ */
+public class CompressFactory {
+
+    /**
+     * 下标为compress字节(无符号)
+     */
+    private static final Compress[] COMPRESSES = new Compress[256];
+
+    /**
+     * 配置名称 -> compress字节
+     */
+    private static final Map<String, Byte> NAMES = new ConcurrentHashMap<>();
+
+    static {
+        register("none", RpcConstants.COMPRESS_NONE, new NoneCompress());
+        register("gzip", RpcConstants.COMPRESS_GZIP, new GzipCompress());
+        register("lz4", RpcConstants.COMPRESS_LZ4, new Lz4Compress());
+        register("zstd", RpcConstants.COMPRESS_ZSTD, new ZstdCompress());
+    }
+
+    private CompressFactory() {
+
+    }
+
+    /**
+     * 注册压缩方式, 已存在时覆盖
+     */
+    public static void register(String name, byte type, Compress compress) {
+        COMPRESSES[type & 0xFF] = compress;
+        NAMES.put(name.toLowerCase(), type);
+    }
+
+    /**
+     * 根据compress字节获取压缩实现
+     */
+    public static Compress getCompress(byte type) {
+        Compress compress = COMPRESSES[type & 0xFF];
+        if (compress == null) {
+            throw new IllegalArgumentException("不支持的压缩方式: " + type);
+        }
+        return compress;
+    }
+
+    /**
+     * 根据配置名称获取compress字节
+     */
+    public static byte getType(String name) {
+        Byte type = NAMES.get(name.toLowerCase());
+        if (type == null) {
+            throw new IllegalArgumentException("不支持的压缩方式: " + name);
+        }
+        return type;
+    }
+
+}
@@ -1,48 +1,137 @@
 package com.mycz.krpc.core.remoting.transport.compress.gzip;
 
-import com.mycz.krpc.core.remoting.transport.compress.Compress;
+import com.esotericsoftware.kryo.util.Pool;
+import com.mycz.krpc.core.remoting.transport.compress.BlockCompress;
+import com.mycz.krpc.core.utils.RuntimeUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
-public class GzipCompress implements Compress {
+/**
+ * gzip压缩, 输出与GZIPOutputStream兼容
+ * <p>
+ * Deflater/Inflater持有zlib的本地内存, 池化复用, 不再每条消息创建; 直接在ByteBuf的内存上压缩和解压
+ */
+public class GzipCompress extends BlockCompress {
 
-    private static final int BUFFER_SIZE = 1024 * 8;
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    /**
+     * 文件头: 魔数, 压缩方法(deflate), 标志位, 修改时间, 额外标志, 操作系统
+     */
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private static final int TRAILER_LENGTH = 8;
+
+    private static final int POOL_SIZE = RuntimeUtil.cpus() * 4;
+
+    private static final Pool<Deflater> DEFLATER_POOL = new Pool<>(true, false, POOL_SIZE) {
+        @Override
+        protected Deflater create() {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+    };
+
+    private static final Pool<Inflater> INFLATER_POOL = new Pool<>(true, false, POOL_SIZE) {
+        @Override
+        protected Inflater create() {
+            return new Inflater(true);
+        }
+    };
+
+    public GzipCompress() {
+        super("gzip");
+    }
 
     @Override
-    public byte[] compress(byte[] bytes) {
-        if (bytes == null) {
-            throw new NullPointerException("bytes is null");
-        }
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream();
-             GZIPOutputStream gzip = new GZIPOutputStream(out)) {
-            gzip.write(bytes);
-            gzip.flush();
-            gzip.finish();
-            return out.toByteArray();
-        } catch (IOException e) {
-            throw new RuntimeException("gzip compress error", e);
+    public void compress(ByteBuf src, ByteBuf dst) {
+        int length = src.readableBytes();
+        ByteBuffer in = src.nioBuffer(src.readerIndex(), length);
+        CRC32 crc = new CRC32();
+        crc.update(in.duplicate());
+
+        dst.writeBytes(HEADER);
+        Deflater deflater = DEFLATER_POOL.obtain();
+        try {
+            deflater.setInput(in);
+            deflater.finish();
+            while (!deflater.finished()) {
+                dst.ensureWritable(Math.max(64, length / 2));
+                ByteBuffer out = dst.nioBuffer(dst.writerIndex(), dst.writableBytes());
+                dst.writerIndex(dst.writerIndex() + deflater.deflate(out));
+            }
+        } finally {
+            deflater.reset();
+            DEFLATER_POOL.free(deflater);
         }
+        dst.writeIntLE((int) crc.getValue());
+        dst.writeIntLE(length);
+        src.skipBytes(length);
     }
 
     @Override
-    public byte[] decompress(byte[] bytes) {
-        if (bytes == null) {
-            throw new NullPointerException("bytes is null");
-        }
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream();
-             GZIPInputStream gunzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int n;
-            while ((n = gunzip.read(buffer)) > -1) {
-                out.write(buffer, 0, n);
+    public void decompress(ByteBuf src, ByteBuf dst) throws IOException {
+        int length = src.readableBytes();
+        int index = src.readerIndex();
+        if (length < HEADER.length + TRAILER_LENGTH || src.getUnsignedShortLE(index) != GZIP_MAGIC || src.getByte(index + 2) != Deflater.DEFLATED) {
+            throw new ZipException("gzip格式不合法");
+        }
+        if (src.getByte(index + 3) != 0) {
+            // 带文件名、注释等可选字段, 交给GZIPInputStream解析
+            this.decompressStream(src, dst);
+            return;
+        }
+
+        int start = dst.writerIndex();
+        int remaining;
+        Inflater inflater = INFLATER_POOL.obtain();
+        try {
+            inflater.setInput(src.nioBuffer(index + HEADER.length, length - HEADER.length));
+            while (!inflater.finished()) {
+                dst.ensureWritable(Math.max(4096, length * 2));
+                ByteBuffer out = dst.nioBuffer(dst.writerIndex(), dst.writableBytes());
+                int n = inflater.inflate(out);
+                dst.writerIndex(dst.writerIndex() + n);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException("gzip数据不完整");
+                }
             }
-            return out.toByteArray();
-        } catch (IOException e) {
-            throw new RuntimeException("gzip decompress error", e);
+            remaining = inflater.getRemaining();
+        } catch (DataFormatException e) {
+            throw new ZipException("gzip解压失败: " + e.getMessage());
+        } finally {
+            inflater.reset();
+            INFLATER_POOL.free(inflater);
+        }
+
+        if (remaining < TRAILER_LENGTH) {
+            throw new ZipException("gzip数据不完整");
+        }
+        int trailer = index + length - remaining;
+        int written = dst.writerIndex() - start;
+        CRC32 crc = new CRC32();
+        crc.update(dst.nioBuffer(start, written));
+        if (src.getIntLE(trailer) != (int) crc.getValue() || src.getIntLE(trailer + 4) != written) {
+            throw new ZipException("gzip校验失败");
         }
+        src.skipBytes(length);
     }
+
+    private void decompressStream(ByteBuf src, ByteBuf dst) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteBufInputStream(src, src.readableBytes()))) {
+            while (dst.writeBytes(in, 8192) > 0) {
+                // 读到流结束
+            }
+        }
+    }
+
 }
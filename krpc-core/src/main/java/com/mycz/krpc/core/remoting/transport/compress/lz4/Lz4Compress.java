@@ -0,0 +1,71 @@
+package com.mycz.krpc.core.remoting.transport.compress.lz4;
+
+import com.mycz.krpc.core.remoting.transport.compress.BlockCompress;
+import io.netty.buffer.ByteBuf;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * lz4压缩, 压缩率低于gzip但cpu开销小很多
+ * <p>
+ * 格式: 原始长度(int) + lz4 block; 压缩器无状态、线程安全, 直接在ByteBuf的内存上压缩和解压, 不分配中间缓冲区
+ */
+public class Lz4Compress extends BlockCompress {
+
+    /**
+     * lz4的最大压缩比, 用于校验原始长度, 防止按伪造的长度分配内存
+     */
+    private static final int MAX_RATIO = 255;
+
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+
+    private static final LZ4SafeDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().safeDecompressor();
+
+    public Lz4Compress() {
+        super("lz4");
+    }
+
+    @Override
+    public void compress(ByteBuf src, ByteBuf dst) {
+        int length = src.readableBytes();
+        int maxLength = COMPRESSOR.maxCompressedLength(length);
+        dst.ensureWritable(4 + maxLength);
+        dst.writeInt(length);
+        ByteBuffer in = src.nioBuffer(src.readerIndex(), length);
+        ByteBuffer out = dst.nioBuffer(dst.writerIndex(), maxLength);
+        int compressed = COMPRESSOR.compress(in, in.position(), length, out, out.position(), maxLength);
+        src.skipBytes(length);
+        dst.writerIndex(dst.writerIndex() + compressed);
+    }
+
+    @Override
+    public void decompress(ByteBuf src, ByteBuf dst) throws IOException {
+        if (src.readableBytes() < 4) {
+            throw new IOException("lz4数据不完整");
+        }
+        int length = src.readInt();
+        int compressedLength = src.readableBytes();
+        if (length < 0 || length > (long) compressedLength * MAX_RATIO) {
+            throw new IOException("lz4原始长度不合法: " + length);
+        }
+        dst.ensureWritable(length);
+        ByteBuffer in = src.nioBuffer(src.readerIndex(), compressedLength);
+        ByteBuffer out = dst.nioBuffer(dst.writerIndex(), length);
+        try {
+            int decompressed = DECOMPRESSOR.decompress(in, in.position(), compressedLength, out, out.position(), length);
+            if (decompressed != length) {
+                throw new IOException("lz4原始长度不符: " + decompressed + "/" + length);
+            }
+        } catch (LZ4Exception e) {
+            throw new IOException("lz4解压失败", e);
+        }
+        src.skipBytes(compressedLength);
+        dst.writerIndex(dst.writerIndex() + length);
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.mycz.krpc.core.remoting.transport.compress.none;
+
+import com.mycz.krpc.core.remoting.transport.compress.Compress;
+import io.netty.buffer.ByteBuf;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 不压缩, 原样输出
+ */
+public class NoneCompress implements Compress {
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        return bytes;
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException("bytes is null");
+        }
+        return bytes;
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) {
+        if (out == null) {
+            throw new NullPointerException("out is null");
+        }
+        return out;
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) {
+        if (in == null) {
+            throw new NullPointerException("in is null");
+        }
+        return in;
+    }
+
+    @Override
+    public void compress(ByteBuf src, ByteBuf dst) {
+        dst.writeBytes(src);
+    }
+
+    @Override
+    public void decompress(ByteBuf src, ByteBuf dst) {
+        dst.writeBytes(src);
+    }
+}
@@ -1,21 +1,20 @@
 package com.mycz.krpc.core.remoting.transport.server;
 
 import com.mycz.arch.common.util.JsonKit;
+import com.mycz.krpc.core.capture.CaptureLog;
 import com.mycz.krpc.core.config.RpcConfig;
 import com.mycz.krpc.core.factory.ApplicationContext;
+import com.mycz.krpc.core.lifecycle.GracefulShutdown;
+import com.mycz.krpc.core.remoting.transport.channel.Transport;
 import com.mycz.krpc.core.remoting.transport.codec.RpcMessageDecoder;
 import com.mycz.krpc.core.remoting.transport.codec.RpcMessageEncoder;
-import com.mycz.krpc.core.utils.RuntimeUtil;
-import com.mycz.krpc.core.utils.ThreadPoolFactoryUtil;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.timeout.IdleStateHandler;
-import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
@@ -28,18 +27,15 @@ public class NettyRpcServer {
 
     @SneakyThrows
     public void start() {
-        EventLoopGroup bossGroup = new NioEventLoopGroup(1);
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
-
-        DefaultEventExecutorGroup serviceHandlerGroup = new DefaultEventExecutorGroup(
-                RuntimeUtil.cpus() * 2,
-                ThreadPoolFactoryUtil.createThreadFactory("service-handler-group", false)
-        );
+        Transport transport = ApplicationContext.getInstance(Transport.class);
+        EventLoopGroup bossGroup = transport.eventLoopGroup(1, new DefaultThreadFactory("krpc-server-boss"));
+        EventLoopGroup workerGroup = transport.eventLoopGroup(0, new DefaultThreadFactory("krpc-server-io"));
+        log.info("*** krpc - 网络传输: {}", transport.name());
 
         try {
             ServerBootstrap b = new ServerBootstrap();
             b.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(transport.serverChannelClass())
                     // TCP默认开启了 Nagle 算法，该算法的作用是尽可能的发送大数据快，减少网络传输。TCP_NODELAY 参数的作用就是控制是否启用 Nagle 算法。
                     .childOption(ChannelOption.TCP_NODELAY, true)
                     // 是否开启 TCP 底层心跳机制
@@ -50,31 +46,35 @@ public class NettyRpcServer {
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel ch) {
-                            ChannelPipeline p = ch.pipeline();
-                            p.addLast("server-idle-handler", new IdleStateHandler(30, 0, 0, TimeUnit.SECONDS));
-                            p.addLast("encoder", new RpcMessageEncoder());
-                            p.addLast("decoder", new RpcMessageDecoder());
-                            p.addLast(serviceHandlerGroup, new NettyRpcServerHandler());
+                            initPipeline(ch.pipeline(), ApplicationContext.getInstance(CaptureLog.class));
                         }
                     });
 
             RpcConfig rpcConfig = ApplicationContext.getInstance(RpcConfig.class);
+            transport.configure(b, rpcConfig.getServer().getReusePort());
+
             ChannelFuture f = b.bind(rpcConfig.getHost(), rpcConfig.getPort() == null ? 0 : rpcConfig.getPort()).sync();
             f.addListener(new NettyRpcServiceListener());
 
-            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                log.info("*** krpc - 关闭");
-                ThreadPoolFactoryUtil.shutDownAllThreadPool();
-                bossGroup.shutdownGracefully();
-                workerGroup.shutdownGracefully();
-                serviceHandlerGroup.shutdownGracefully();
-            }));
+            // 停机由GracefulShutdown按顺序排空后关闭
+            GracefulShutdown.server(f.channel(), bossGroup, workerGroup);
         } catch (Exception e) {
             log.error("*** krpc - 启动异常", e);
             bossGroup.shutdownGracefully();
             workerGroup.shutdownGracefully();
-            serviceHandlerGroup.shutdownGracefully();
         }
     }
 
+    /**
+     * 服务端处理链, 预热时在进程内复用同一条处理链
+     *
+     * @param captureLog 请求录制, 为空时不录制
+     */
+    public static void initPipeline(ChannelPipeline p, CaptureLog captureLog) {
+        p.addLast("server-idle-handler", new IdleStateHandler(30, 0, 0, TimeUnit.SECONDS));
+        p.addLast("encoder", new RpcMessageEncoder());
+        p.addLast("decoder", new RpcMessageDecoder(captureLog));
+        p.addLast("handler", new NettyRpcServerHandler());
+    }
+
 }
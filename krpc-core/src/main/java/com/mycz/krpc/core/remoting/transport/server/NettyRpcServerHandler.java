@@ -1,75 +1,185 @@
 package com.mycz.krpc.core.remoting.transport.server;
 
 import com.mycz.arch.common.util.JsonKit;
+import com.mycz.krpc.core.config.RpcConfig;
 import com.mycz.krpc.core.factory.ApplicationContext;
+import com.mycz.krpc.core.factory.RpcContext;
+import com.mycz.krpc.core.lifecycle.GracefulShutdown;
 import com.mycz.krpc.core.provider.RpcReferenceInvoke;
 import com.mycz.krpc.core.remoting.entity.RpcConstants;
 import com.mycz.krpc.core.remoting.entity.RpcMessage;
 import com.mycz.krpc.core.remoting.entity.RpcRequest;
 import com.mycz.krpc.core.remoting.entity.RpcResponse;
+import com.mycz.krpc.core.remoting.transport.compress.CompressFactory;
+import com.mycz.krpc.core.remoting.transport.server.dispatcher.Dispatcher;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
-import io.netty.channel.DefaultEventLoopGroup;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.logging.log4j.ThreadContext;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+
 @Slf4j
 public class NettyRpcServerHandler extends ChannelInboundHandlerAdapter {
 
-    private static final DefaultEventLoopGroup eventLoopGroup = new DefaultEventLoopGroup(16);
+    /**
+     * 响应默认使用的压缩方式
+     */
+    private final byte compressType;
+
+    /**
+     * 业务方法分发器
+     */
+    private final Dispatcher dispatcher;
+
+    public NettyRpcServerHandler() {
+        compressType = CompressFactory.getType(ApplicationContext.getInstance(RpcConfig.class).getCodec().getCompress());
+        dispatcher = ApplicationContext.getInstance(Dispatcher.class);
+    }
+
+    /**
+     * 登记连接, 停机时通知并关闭
+     */
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        GracefulShutdown.channel(ctx.channel());
+        super.channelActive(ctx);
+    }
 
     /**
-     * 处理接收数据
+     * 处理接收数据, 心跳直接在IO线程回复, 请求最多投递一次到业务线程
      */
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
-        eventLoopGroup.execute(() -> {
-            try {
-                if (msg instanceof RpcMessage rpcMessage) {
-                    // 心跳请求
-                    if (RpcConstants.HEARTBEAT_REQUEST_TYPE == rpcMessage.getMessageType()) {
-                        rpcMessage.setMessageType(RpcConstants.HEARTBEAT_RESPONSE_TYPE);
-                    }
-
-                    // 常规请求
-                    Object data = rpcMessage.getData();
-                    if (data instanceof RpcRequest rpcRequest) {
-                        // 全局上下文
-                        ApplicationContext.setTranceId(rpcRequest.getTraceId());
-                        ApplicationContext.setIp(rpcRequest.getIp());
-                        ApplicationContext.addAttributes(rpcRequest.getContext());
-
-                        // 找到实际要调用的类
-                        try {
-                            ThreadContext.put("TRACE_ID", rpcRequest.getTraceId());
-                            Object result = RpcReferenceInvoke.invoke(rpcRequest.getInterfaceName(), rpcRequest.getMethodName(), rpcRequest.getParamTypes(), rpcRequest.getParameters());
-                            rpcMessage.setData(RpcResponse.success(result, rpcRequest.getTraceId()));
-                        } catch (Exception e) {
-                            RpcResponse<Object> response = RpcResponse.fail();
-                            response.setTraceId(rpcRequest.getTraceId());
-                            rpcMessage.setData(response);
-                            log.error("not writable now, message dropped", e);
-                        } finally {
-                            ThreadContext.remove("TRACE_ID");
-                        }
-                    } else {
-                        log.error("非法rpc请求内容, {}", JsonKit.toJson(data));
-                    }
-                    rpcMessage.setMessageType(RpcConstants.RESPONSE_TYPE);
-                    ctx.writeAndFlush(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
-                } else {
-                    log.info("[NettyRpcServerHandler][ChannelRead] - invalid msg");
+        if (!(msg instanceof RpcMessage rpcMessage)) {
+            log.info("[NettyRpcServerHandler][ChannelRead] - invalid msg");
+            ReferenceCountUtil.release(msg);
+            return;
+        }
+
+        // 心跳请求
+        if (RpcConstants.HEARTBEAT_REQUEST_TYPE == rpcMessage.getMessageType()) {
+            rpcMessage.setMessageType(RpcConstants.HEARTBEAT_RESPONSE_TYPE);
+            rpcMessage.setData(null);
+            ctx.writeAndFlush(rpcMessage).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+            return;
+        }
+
+        // 写出响应后计数减一, 停机时等待在途请求归零
+        GracefulShutdown.requestStarted();
+        try {
+            dispatcher.dispatch(() -> this.handleRequest(ctx, rpcMessage), () -> this.reject(ctx, rpcMessage));
+        } catch (RejectedExecutionException e) {
+            log.warn("*** krpc - 业务线程繁忙, 请求被拒绝, 排队数: {}", dispatcher.queueDepth());
+            this.reject(ctx, rpcMessage);
+        }
+    }
+
+    /**
+     * 请求未执行, 写回失败响应
+     */
+    private void reject(ChannelHandlerContext ctx, RpcMessage rpcMessage) {
+        RpcResponse<Object> response = RpcResponse.fail();
+        if (rpcMessage.getData() instanceof RpcRequest rpcRequest) {
+            response.setTraceId(rpcRequest.getTraceId());
+        }
+        this.writeResponse(ctx, rpcMessage, response);
+    }
+
+    /**
+     * 调用业务方法并写回响应
+     */
+    private void handleRequest(ChannelHandlerContext ctx, RpcMessage rpcMessage) {
+        Object data = rpcMessage.getData();
+        if (!(data instanceof RpcRequest rpcRequest)) {
+            log.error("非法rpc请求内容, {}", JsonKit.toJson(data));
+            this.writeResponse(ctx, rpcMessage, RpcResponse.fail());
+            return;
+        }
+
+        // 全局上下文, 每个请求独立, 处理完成后清除
+        Map<String, Object> attributes = new HashMap<>();
+        if (rpcRequest.getContext() != null) {
+            attributes.putAll(rpcRequest.getContext());
+        }
+        ApplicationContext.setContext(RpcContext.builder()
+                .ip(rpcRequest.getIp())
+                .traceId(rpcRequest.getTraceId())
+                .context(attributes)
+                .build());
+
+        // 找到实际要调用的类, 握手后按方法id调用
+        Object result;
+        try {
+            ThreadContext.put("TRACE_ID", rpcRequest.getTraceId());
+            result = rpcRequest.getMethodId() != null
+                    ? RpcReferenceInvoke.invoke(rpcRequest.getMethodId(), rpcRequest.getParameters())
+                    : RpcReferenceInvoke.invoke(rpcRequest.getInterfaceName(), rpcRequest.getMethodName(), rpcRequest.getParamTypes(), rpcRequest.getParameters());
+        } catch (Exception e) {
+            this.writeResponse(ctx, rpcMessage, this.buildResponse(rpcRequest, null, e));
+            return;
+        } finally {
+            ThreadContext.remove("TRACE_ID");
+            ApplicationContext.removeContext();
+        }
+
+        // 异步实现在完成时写回响应, 等待期间不占用业务线程
+        if (result instanceof CompletionStage<?> stage) {
+            stage.whenComplete((value, e) -> {
+                // 回调可能在其他线程上执行, 重新设置TRACE_ID以便日志关联
+                ThreadContext.put("TRACE_ID", rpcRequest.getTraceId());
+                try {
+                    this.writeResponse(ctx, rpcMessage, this.buildResponse(rpcRequest, value, e));
+                } finally {
+                    ThreadContext.remove("TRACE_ID");
                 }
-            } finally {
-                // 确保ByteBuf释放, 防止内存泄漏
-                ReferenceCountUtil.release(msg);
-            }
-        });
+            });
+        } else {
+            this.writeResponse(ctx, rpcMessage, this.buildResponse(rpcRequest, result, null));
+        }
+    }
 
+    /**
+     * 根据调用结果构建响应
+     */
+    private RpcResponse<Object> buildResponse(RpcRequest rpcRequest, Object result, Throwable cause) {
+        RpcResponse<Object> response;
+        if (cause == null) {
+            response = RpcResponse.success(result, rpcRequest.getTraceId());
+        } else {
+            response = RpcResponse.fail();
+            response.setTraceId(rpcRequest.getTraceId());
+            String method = rpcRequest.getMethodId() != null
+                    ? RpcReferenceInvoke.signature(rpcRequest.getMethodId())
+                    : rpcRequest.getInterfaceName() + "#" + rpcRequest.getMethodName();
+            log.error("*** krpc - 服务方法执行异常: {}", method, cause);
+        }
+        // 握手请求, 下发方法表
+        if (Boolean.TRUE.equals(rpcRequest.getHandshake())) {
+            response.setMethodTable(RpcReferenceInvoke.getMethodTable());
+        }
+        return response;
+    }
+
+    /**
+     * 写回响应
+     */
+    private void writeResponse(ChannelHandlerContext ctx, RpcMessage rpcMessage, RpcResponse<Object> response) {
+        rpcMessage.setData(response);
+        rpcMessage.setMessageType(RpcConstants.RESPONSE_TYPE);
+        // 沿用请求的压缩方式以兼容旧版本客户端; 请求未压缩时(只有新版本客户端会这样发送)使用本地配置
+        if (rpcMessage.getCompress() == RpcConstants.COMPRESS_NONE) {
+            rpcMessage.setCompress(compressType);
+        }
+        ctx.writeAndFlush(rpcMessage).addListener(future -> GracefulShutdown.requestFinished())
+                .addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
     }
 
     /**
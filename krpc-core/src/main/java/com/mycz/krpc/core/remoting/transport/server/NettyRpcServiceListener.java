@@ -2,19 +2,25 @@ package com.mycz.krpc.core.remoting.transport.server;
 
 import com.mycz.krpc.core.config.RpcConfig;
 import com.mycz.krpc.core.factory.ApplicationContext;
+import com.mycz.krpc.core.lifecycle.GracefulShutdown;
+import com.mycz.krpc.core.lifecycle.Readiness;
 import com.mycz.krpc.core.registry.ServiceRegistry;
-import com.mycz.krpc.core.registry.consul.ConsulServiceRegistry;
+import com.mycz.krpc.core.registry.entity.ServiceDiscoveryResult;
 import com.mycz.krpc.core.registry.entity.ServiceRegisterResult;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.InetSocketAddress;
-import java.net.SocketAddress;
 
 @Slf4j
 public class NettyRpcServiceListener implements ChannelFutureListener {
 
+    /**
+     * 权重预热分几步升到默认权重
+     */
+    private static final int WARMUP_STEPS = 10;
+
     @Override
     public void operationComplete(ChannelFuture future) throws Exception {
         if (future.isSuccess()) {
@@ -22,32 +28,68 @@ public class NettyRpcServiceListener implements ChannelFutureListener {
 
             log.info("*** krpc - 启动成功, 端口: {}", socketAddress.getPort());
 
-            // 注册服务
+            // 所有就绪条件满足后立即注册服务
             RpcConfig rpcConfig = ApplicationContext.getInstance(RpcConfig.class);
             rpcConfig.setPort(socketAddress.getPort());
             if (rpcConfig.getRegistry().getEnable()) {
-                Thread.ofVirtual().start(() -> {
-                    try {
-                        Thread.sleep(3000);
-                    } catch (Exception e) {
-                        log.error("系统错误", e);
-                    }
-                    this.register(rpcConfig.getName(), rpcConfig.getRegistry().getServiceIP(), rpcConfig.getPort());
-                });
+                Readiness.onReady(() -> Thread.ofVirtual().name("krpc-register").start(() -> this.register(rpcConfig)));
             }
+            Readiness.ready(Readiness.SERVER);
         } else {
             throw new Exception("*** krpc - 启动失败");
         }
     }
 
     /**
-     * 注册服务
+     * 注册服务, 以初始权重注册后在预热期内逐步升到默认权重
      */
-    private void register(String serviceName, String host, int port) {
+    private void register(RpcConfig rpcConfig) {
+        RpcConfig.Registry config = rpcConfig.getRegistry();
+        int warmupPeriod = config.getWarmupPeriod();
+        int weight = warmupPeriod > 0 ? config.getInitialWeight() : ServiceDiscoveryResult.DEFAULT_WEIGHT;
+
+        if (GracefulShutdown.isStopped()) {
+            return;
+        }
         ServiceRegistry registry = ApplicationContext.getInstance(ServiceRegistry.class);
-        ServiceRegisterResult result = registry.register(serviceName, new InetSocketAddress(host, port));
-        // 服务关闭时自动解除注册
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> registry.deregister(result.getId())));
+        ServiceRegisterResult result = registry.register(rpcConfig.getName(), new InetSocketAddress(config.getServiceIP(), rpcConfig.getPort()), weight);
+        // 停机时最先解除注册, 同时停止升权, 避免更新权重时重新注册
+        Thread rampThread = Thread.currentThread();
+        GracefulShutdown.deregistration(() -> {
+            rampThread.interrupt();
+            registry.deregister(result.getId());
+        });
+        // 注册期间已开始停机
+        if (GracefulShutdown.isStopped()) {
+            registry.deregister(result.getId());
+            return;
+        }
+
+        if (warmupPeriod > 0) {
+            this.rampWeight(registry, result.getId(), weight, warmupPeriod);
+        }
+    }
+
+    /**
+     * 线性升权, 客户端随权重逐步增加分到的流量
+     */
+    private void rampWeight(ServiceRegistry registry, String id, int initialWeight, int warmupPeriod) {
+        for (int step = 1; step <= WARMUP_STEPS; step++) {
+            try {
+                Thread.sleep(warmupPeriod / WARMUP_STEPS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (GracefulShutdown.isStopped()) {
+                return;
+            }
+            int weight = initialWeight + (ServiceDiscoveryResult.DEFAULT_WEIGHT - initialWeight) * step / WARMUP_STEPS;
+            try {
+                registry.updateWeight(id, weight);
+            } catch (Exception e) {
+                log.warn("*** krpc - 服务权重更新失败: {}", weight, e);
+            }
+        }
     }
 
 }
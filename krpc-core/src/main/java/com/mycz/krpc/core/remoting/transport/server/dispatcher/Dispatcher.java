@@ -0,0 +1,28 @@
+package com.mycz.krpc.core.remoting.transport.server.dispatcher;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 服务端请求分发, 决定业务方法在哪个线程上执行
+ */
+public interface Dispatcher {
+
+    /**
+     * 分发请求
+     *
+     * @param task     请求处理任务
+     * @param rejected 已接收的任务最终没有执行时(如等待许可时被中断)调用, 由调用方写回失败响应
+     * @throws RejectedExecutionException 排队已满
+     */
+    void dispatch(Runnable task, Runnable rejected) throws RejectedExecutionException;
+
+    /**
+     * 排队中的请求数
+     */
+    int queueDepth();
+
+    /**
+     * 关闭
+     */
+    void shutdown();
+}
@@ -0,0 +1,41 @@
+package com.mycz.krpc.core.remoting.transport.server.dispatcher;
+
+import com.mycz.krpc.core.config.RpcConfig;
+
+import java.util.Set;
+
+/**
+ * 按配置创建分发器
+ */
+public class DispatcherFactory {
+
+    /**
+     * 支持的分发模式
+     */
+    private static final Set<String> MODES = Set.of("io", "pool", "virtual");
+
+    private DispatcherFactory() {
+
+    }
+
+    /**
+     * 校验分发模式
+     */
+    public static void check(String dispatch) {
+        if (!MODES.contains(dispatch.toLowerCase())) {
+            throw new IllegalArgumentException("不支持的分发模式: " + dispatch);
+        }
+    }
+
+    /**
+     * 创建分发器
+     */
+    public static Dispatcher create(RpcConfig.Server server) {
+        check(server.getDispatch());
+        return switch (server.getDispatch().toLowerCase()) {
+            case "io" -> new IoDispatcher();
+            case "virtual" -> new VirtualThreadDispatcher(server.getMaxConcurrency(), server.getQueueSize());
+            default -> new PoolDispatcher(server.getThreads(), server.getQueueSize());
+        };
+    }
+}
@@ -0,0 +1,22 @@
+package com.mycz.krpc.core.remoting.transport.server.dispatcher;
+
+/**
+ * 直接在IO线程上执行, 适合耗时极短且不阻塞的方法
+ */
+public class IoDispatcher implements Dispatcher {
+
+    @Override
+    public void dispatch(Runnable task, Runnable rejected) {
+        task.run();
+    }
+
+    @Override
+    public int queueDepth() {
+        return 0;
+    }
+
+    @Override
+    public void shutdown() {
+
+    }
+}
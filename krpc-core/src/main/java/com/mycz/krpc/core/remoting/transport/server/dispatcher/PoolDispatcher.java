@@ -0,0 +1,41 @@
+package com.mycz.krpc.core.remoting.transport.server.dispatcher;
+
+import com.mycz.krpc.core.utils.CustomThreadPoolConfig;
+import com.mycz.krpc.core.utils.ThreadPoolFactoryUtil;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 有界业务线程池, IO线程只做一次投递
+ */
+public class PoolDispatcher implements Dispatcher {
+
+    private final ThreadPoolExecutor executor;
+
+    public PoolDispatcher(int threads, int queueSize) {
+        CustomThreadPoolConfig config = new CustomThreadPoolConfig();
+        config.setCorePoolSize(threads);
+        config.setMaximumPoolSize(threads);
+        config.setKeepAliveTime(60);
+        config.setUnit(TimeUnit.SECONDS);
+        config.setWorkQueue(new ArrayBlockingQueue<>(queueSize));
+        this.executor = (ThreadPoolExecutor) ThreadPoolFactoryUtil.createCustomThreadPoolIfAbsent(config, "krpc-server-worker", true);
+    }
+
+    @Override
+    public void dispatch(Runnable task, Runnable rejected) {
+        executor.execute(task);
+    }
+
+    @Override
+    public int queueDepth() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,77 @@
+package com.mycz.krpc.core.remoting.transport.server.dispatcher;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 每个请求一个虚拟线程, 阻塞调用不会占满平台线程
+ * 通过信号量限制同时执行的请求数, 等待许可的请求数超过排队上限时拒绝
+ */
+public class VirtualThreadDispatcher implements Dispatcher {
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("krpc-server-vt-", 0).factory());
+
+    /**
+     * 并发许可
+     */
+    private final Semaphore permits;
+
+    /**
+     * 已接收未完成的请求数(执行中 + 等待许可)
+     */
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    /**
+     * inflight上限
+     */
+    private final int limit;
+
+    public VirtualThreadDispatcher(int maxConcurrency, int queueSize) {
+        this.permits = new Semaphore(maxConcurrency);
+        this.limit = maxConcurrency + queueSize;
+    }
+
+    @Override
+    public void dispatch(Runnable task, Runnable rejected) {
+        if (inflight.incrementAndGet() > limit) {
+            inflight.decrementAndGet();
+            throw new RejectedExecutionException("krpc virtual thread dispatcher is full");
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    // 在虚拟线程内等待许可, 不阻塞IO线程
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    // 未执行的请求同样要写回响应, 否则客户端只能等到超时
+                    inflight.decrementAndGet();
+                    rejected.run();
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                    inflight.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inflight.decrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public int queueDepth() {
+        return permits.getQueueLength();
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
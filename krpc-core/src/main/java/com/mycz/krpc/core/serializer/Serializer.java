@@ -1,5 +1,11 @@
 package com.mycz.krpc.core.serializer;
 
+import com.mycz.krpc.core.exception.SerializeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  * 序列化接口，所有序列化类都要实现这个接口
  */
@@ -15,4 +21,26 @@ public interface Serializer {
      */
     <T> T deserialize(byte[] bytes, Class<T> clazz);
 
+    /**
+     * 序列化, 结果直接写入输出流, 实现类可覆盖以避免中间byte[]
+     */
+    default void serialize(Object obj, OutputStream out) {
+        try {
+            out.write(serialize(obj));
+        } catch (IOException e) {
+            throw new SerializeException("序列化失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 反序列化, 直接从输入流读取, 实现类可覆盖以避免中间byte[]
+     */
+    default <T> T deserialize(InputStream in, Class<T> clazz) {
+        try {
+            return deserialize(in.readAllBytes(), clazz);
+        } catch (IOException e) {
+            throw new SerializeException("反序列化失败: " + e.getMessage(), e);
+        }
+    }
+
 }
@@ -0,0 +1,64 @@
+package com.mycz.krpc.core.serializer;
+
+import com.mycz.krpc.core.remoting.entity.RpcConstants;
+import com.mycz.krpc.core.serializer.kryo.KryoSerializer;
+import com.mycz.krpc.core.serializer.kryo.KryoUnsafeSerializer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 序列化方式注册表, 按消息头中的codec字节查找实现
+ */
+public class SerializerFactory {
+
+    /**
+     * 下标为codec字节(无符号)
+     */
+    private static final Serializer[] SERIALIZERS = new Serializer[256];
+
+    /**
+     * 配置名称 -> codec字节
+     */
+    private static final Map<String, Byte> NAMES = new ConcurrentHashMap<>();
+
+    static {
+        register("kryo", RpcConstants.CODEC_KRYO, new KryoSerializer());
+        register("kryo-unsafe", RpcConstants.CODEC_KRYO_UNSAFE, new KryoUnsafeSerializer());
+    }
+
+    private SerializerFactory() {
+
+    }
+
+    /**
+     * 注册序列化方式, 已存在时覆盖
+     */
+    public static void register(String name, byte codec, Serializer serializer) {
+        SERIALIZERS[codec & 0xFF] = serializer;
+        NAMES.put(name.toLowerCase(), codec);
+    }
+
+    /**
+     * 根据codec字节获取序列化实现
+     */
+    public static Serializer getSerializer(byte codec) {
+        Serializer serializer = SERIALIZERS[codec & 0xFF];
+        if (serializer == null) {
+            throw new IllegalArgumentException("不支持的序列化方式: " + codec);
+        }
+        return serializer;
+    }
+
+    /**
+     * 根据配置名称获取codec字节
+     */
+    public static byte getCodec(String name) {
+        Byte codec = NAMES.get(name.toLowerCase());
+        if (codec == null) {
+            throw new IllegalArgumentException("不支持的序列化方式: " + name);
+        }
+        return codec;
+    }
+
+}
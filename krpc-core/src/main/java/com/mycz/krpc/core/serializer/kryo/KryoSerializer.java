@@ -5,54 +5,173 @@ import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.serializers.CompatibleFieldSerializer;
 import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import com.esotericsoftware.kryo.util.Pool;
 import com.mycz.krpc.core.exception.SerializeException;
+import com.mycz.krpc.core.remoting.entity.RpcRequest;
+import com.mycz.krpc.core.remoting.entity.RpcResponse;
 import com.mycz.krpc.core.serializer.Serializer;
+import com.mycz.krpc.core.utils.RuntimeUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.objenesis.strategy.StdInstantiatorStrategy;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 
 @Slf4j
 public class KryoSerializer implements Serializer {
-    
+
+    /**
+     * 流式输入输出的缓冲区大小
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * 对象池容量, 超出容量归还的对象直接丢弃
+     */
+    private static final int POOL_SIZE = RuntimeUtil.cpus() * 4;
+
+    /**
+     * 预注册类的起始id, 避开kryo内置类型占用的id
+     */
+    private static final int REGISTRATION_ID_BASE = 100;
+
+    /**
+     * 预注册的类, 为空时不注册(按类名写入), 注册id由顺序决定, 所有节点必须保持一致
+     */
+    private static volatile List<Class<?>> registeredClasses = List.of();
+
+    /**
+     * kryo非线程安全，使用对象池复用kryo实例, 类元数据只构建一次; 不依赖ThreadLocal, 虚拟线程下同样有效
+     */
+    private static final Pool<Kryo> KRYO_POOL = new Pool<>(true, false, POOL_SIZE) {
+        @Override
+        protected Kryo create() {
+            return createKryo();
+        }
+    };
+
+    /**
+     * 流式序列化复用的Output, 只复用其内部缓冲区, 数据最终写入调用方传入的输出流
+     */
+    private final Pool<Output> outputPool = new Pool<>(true, false, POOL_SIZE) {
+        @Override
+        protected Output create() {
+            return newOutput(BUFFER_SIZE);
+        }
+    };
+
+    /**
+     * 流式反序列化复用的Input, 只复用其内部缓冲区, 数据直接从调用方传入的输入流读取
+     */
+    private final Pool<Input> inputPool = new Pool<>(true, false, POOL_SIZE) {
+        @Override
+        protected Input create() {
+            return newInput(BUFFER_SIZE);
+        }
+    };
+
     /**
-     * kryo非线程安全，所以使用ThreadLocal来维护一份kryo实例
+     * 开启类预注册, 注册RpcRequest, RpcResponse等内置类型以及用户DTO, 须在收发消息前调用
      */
-    private final ThreadLocal<Kryo> kryoThreadLocal = ThreadLocal.withInitial(() -> {
+    public static void registerClasses(Collection<Class<?>> userClasses) {
+        List<Class<?>> classes = new ArrayList<>();
+        classes.add(RpcRequest.class);
+        classes.add(RpcResponse.class);
+        classes.add(Object[].class);
+        classes.add(Class[].class);
+        classes.add(HashMap.class);
+        classes.add(ArrayList.class);
+        for (Class<?> userClass : userClasses) {
+            if (!classes.contains(userClass)) {
+                classes.add(userClass);
+            }
+        }
+        registeredClasses = List.copyOf(classes);
+        // 丢弃已按旧配置创建的实例
+        KRYO_POOL.clear();
+        log.info("*** krpc - kryo预注册类数量: {}", classes.size());
+    }
+
+    private static Kryo createKryo() {
         Kryo kryo = new Kryo();
         kryo.setRegistrationRequired(false);//默认值为true，避免版本变化显式设置
         kryo.setReferences(true);//检测循环依赖，默认值为true,避免版本变化显式设置
         kryo.setDefaultSerializer(CompatibleFieldSerializer.class);
         ((DefaultInstantiatorStrategy) kryo.getInstantiatorStrategy()).setFallbackInstantiatorStrategy(new StdInstantiatorStrategy());//设定默认的实例化器
+        List<Class<?>> classes = registeredClasses;
+        for (int i = 0; i < classes.size(); i++) {
+            kryo.register(classes.get(i), REGISTRATION_ID_BASE + i);
+        }
         return kryo;
-    });
+    }
+
+    /**
+     * 创建Output, 子类可替换为其他编码格式的实现
+     */
+    protected Output newOutput(int bufferSize) {
+        return new Output(bufferSize, -1);
+    }
+
+    /**
+     * 创建Input, 须与newOutput的编码格式对应
+     */
+    protected Input newInput(int bufferSize) {
+        return new Input(bufferSize);
+    }
 
     @Override
     public byte[] serialize(Object obj) {
-        try (ByteArrayOutputStream arrayOs = new ByteArrayOutputStream()) {
-            Output output = new Output(arrayOs);
-            Kryo kryo = kryoThreadLocal.get();
-            kryo.writeObjectOrNull(output, obj, obj.getClass());
+        ByteArrayOutputStream arrayOs = new ByteArrayOutputStream();
+        this.serialize(obj, arrayOs);
+        return arrayOs.toByteArray();
+    }
+
+    @Override
+    public void serialize(Object obj, OutputStream out) {
+        Kryo kryo = KRYO_POOL.obtain();
+        Output output = outputPool.obtain();
+        try {
+            output.setOutputStream(out);
+            // null写为单个NULL标记, 非null与writeObject的格式一致
+            kryo.writeObjectOrNull(output, obj, obj == null ? Object.class : obj.getClass());
             output.flush();
-            return arrayOs.toByteArray();
         } catch (Exception e) {
+            // 清理异常中断留下的引用状态, 保证实例可以继续复用
+            kryo.reset();
             throw new SerializeException("序列化失败: " + e.getMessage(), e);
         } finally {
-            kryoThreadLocal.remove();
+            output.setOutputStream(null);
+            outputPool.free(output);
+            KRYO_POOL.free(kryo);
         }
     }
 
     @Override
     public <T> T deserialize(byte[] bytes, Class<T> clazz) {
-        try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(bytes);
-             Input input = new Input(byteArrayInputStream)) {
-            Kryo kryo = kryoThreadLocal.get();
-            return clazz.cast(kryo.readObject(input, clazz));
+        return this.deserialize(new ByteArrayInputStream(bytes), clazz);
+    }
+
+    @Override
+    public <T> T deserialize(InputStream in, Class<T> clazz) {
+        Kryo kryo = KRYO_POOL.obtain();
+        Input input = inputPool.obtain();
+        try {
+            input.setInputStream(in);
+            return clazz.cast(kryo.readObjectOrNull(input, clazz));
         } catch (Exception e) {
+            // 清理异常中断留下的引用状态, 保证实例可以继续复用
+            kryo.reset();
             throw new SerializeException("反序列化失败: " + e.getMessage(), e);
         } finally {
-            kryoThreadLocal.remove();
+            input.setInputStream(null);
+            inputPool.free(input);
+            KRYO_POOL.free(kryo);
         }
     }
 
@@ -0,0 +1,25 @@
+package com.mycz.krpc.core.serializer.kryo;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.unsafe.UnsafeInput;
+import com.esotericsoftware.kryo.unsafe.UnsafeOutput;
+
+/**
+ * 基于Unsafe的kryo序列化, 数值按定长本机字节序直接拷贝, 数值密集的消息编解码更快, 体积略大
+ * <p>
+ * 与KryoSerializer的二进制格式不兼容, 使用单独的codec字节
+ */
+public class KryoUnsafeSerializer extends KryoSerializer {
+
+    @Override
+    protected Output newOutput(int bufferSize) {
+        return new UnsafeOutput(bufferSize, -1);
+    }
+
+    @Override
+    protected Input newInput(int bufferSize) {
+        return new UnsafeInput(bufferSize);
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.mycz.krpc.core.utils;
+
+public class MethodSignatureUtil {
+
+    private MethodSignatureUtil() {
+
+    }
+
+    /**
+     * 生成方法签名, 格式: 接口名#方法名(参数类型1,参数类型2)
+     *
+     * @param interfaceName 接口全限定名
+     * @param methodName    方法名
+     * @param paramTypes    参数类型
+     * @return 方法签名
+     */
+    public static String signature(String interfaceName, String methodName, Class<?>[] paramTypes) {
+        StringBuilder signature = new StringBuilder(interfaceName).append('#').append(methodName).append('(');
+        if (paramTypes != null) {
+            for (int i = 0; i < paramTypes.length; i++) {
+                if (i > 0) {
+                    signature.append(',');
+                }
+                signature.append(paramTypes[i].getName());
+            }
+        }
+        return signature.append(')').toString();
+    }
+}
@@ -0,0 +1,230 @@
+package com.mycz.krpc.core.warmup;
+
+import com.mycz.arch.common.util.StringKit;
+import com.mycz.krpc.core.capture.CaptureReader;
+import com.mycz.krpc.core.config.RpcConfig;
+import com.mycz.krpc.core.factory.ApplicationContext;
+import com.mycz.krpc.core.provider.RpcReferenceInvoke;
+import com.mycz.krpc.core.remoting.entity.RpcConstants;
+import com.mycz.krpc.core.remoting.entity.RpcMessage;
+import com.mycz.krpc.core.remoting.entity.RpcRequest;
+import com.mycz.krpc.core.remoting.entity.RpcResponse;
+import com.mycz.krpc.core.remoting.transport.codec.RpcMessageDecoder;
+import com.mycz.krpc.core.remoting.transport.codec.RpcMessageEncoder;
+import com.mycz.krpc.core.remoting.transport.compress.CompressFactory;
+import com.mycz.krpc.core.remoting.transport.server.NettyRpcServer;
+import com.mycz.krpc.core.serializer.SerializerFactory;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 启动预热: 在进程内通过LocalChannel把样本请求送进与线上相同的服务端处理链
+ * 客户端编码 -> 服务端解码 -> 分发 -> RpcReferenceInvoke -> 服务端编码 -> 客户端解码, 使整条链路在注册前完成JIT编译
+ */
+@Slf4j
+public class WarmupRunner {
+
+    /**
+     * 同时在途的预热请求数, 使业务线程池也参与预热
+     */
+    private static final int CONCURRENCY = 16;
+
+    /**
+     * 最多加载的录制请求数
+     */
+    private static final int MAX_CAPTURED_SAMPLES = 1000;
+
+    private final RpcConfig.Warmup config;
+
+    private final byte codec;
+
+    private final byte compressType;
+
+    /**
+     * 消息id -> 待响应标记, 收到响应时释放并发许可
+     */
+    private final Map<Integer, Boolean> pending = new ConcurrentHashMap<>();
+
+    private final Semaphore permits = new Semaphore(CONCURRENCY);
+
+    public WarmupRunner() {
+        RpcConfig rpcConfig = ApplicationContext.getInstance(RpcConfig.class);
+        this.config = rpcConfig.getWarmup();
+        this.codec = SerializerFactory.getCodec(rpcConfig.getCodec().getSerializer());
+        this.compressType = CompressFactory.getType(rpcConfig.getCodec().getCompress());
+    }
+
+    /**
+     * 执行预热, 达到次数或时长任一上限即结束
+     */
+    public void run() {
+        if (StringKit.isNotBlank(config.getCaptureDir())) {
+            this.loadCaptured(config.getCaptureDir());
+        }
+        List<RpcRequest> samples = this.prepare(WarmupSamples.get());
+        if (samples.isEmpty()) {
+            log.info("*** krpc - 未登记预热样本, 跳过预热");
+            return;
+        }
+
+        EventLoopGroup group = new DefaultEventLoopGroup(2, new DefaultThreadFactory("krpc-warmup"));
+        LocalAddress address = new LocalAddress("krpc-warmup-" + System.nanoTime());
+        long begin = System.nanoTime();
+        int count = 0;
+        int failed = 0;
+        try {
+            Channel server = new ServerBootstrap()
+                    .group(group)
+                    .channel(LocalServerChannel.class)
+                    .childHandler(new ChannelInitializer<LocalChannel>() {
+                        @Override
+                        protected void initChannel(LocalChannel ch) {
+                            // 预热流量不录制
+                            NettyRpcServer.initPipeline(ch.pipeline(), null);
+                        }
+                    })
+                    .bind(address).sync().channel();
+            WarmupClientHandler handler = new WarmupClientHandler();
+            Channel client = new Bootstrap()
+                    .group(group)
+                    .channel(LocalChannel.class)
+                    .handler(new ChannelInitializer<LocalChannel>() {
+                        @Override
+                        protected void initChannel(LocalChannel ch) {
+                            ch.pipeline().addLast(new RpcMessageEncoder(), new RpcMessageDecoder(), handler);
+                        }
+                    })
+                    .connect(address).sync().channel();
+
+            long deadline = begin + TimeUnit.MILLISECONDS.toNanos(config.getDuration());
+            while (count < config.getIterations() && System.nanoTime() < deadline) {
+                if (!permits.tryAcquire(1, TimeUnit.SECONDS)) {
+                    continue;
+                }
+                RpcMessage rpcMessage = this.request(count, samples.get(count % samples.size()));
+                pending.put(rpcMessage.getTraceId(), Boolean.TRUE);
+                client.writeAndFlush(rpcMessage);
+                count++;
+            }
+            // 等待在途请求完成
+            if (!permits.tryAcquire(CONCURRENCY, 5, TimeUnit.SECONDS)) {
+                log.warn("*** krpc - 预热请求未全部返回, 未返回: {}", pending.size());
+            }
+            failed = handler.failed.get();
+
+            client.close().sync();
+            server.close().sync();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("*** krpc - 预热异常", e);
+        } finally {
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        }
+        log.info("*** krpc - 预热完成, 请求数: {}, 失败: {}, 耗时: {}ms", count, failed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+    }
+
+    /**
+     * 录制的线上请求作为预热样本
+     * 预热会真实执行服务方法, 只加载warmup.methods中列出的方法(须无副作用), 未配置时不加载
+     */
+    private void loadCaptured(String captureDir) {
+        List<String> methods = config.getMethods();
+        if (methods.isEmpty()) {
+            log.warn("*** krpc - 未配置允许预热的方法(warmup.methods), 不加载录制请求");
+            return;
+        }
+        try {
+            List<RpcRequest> requests = new CaptureReader(captureDir).requests(MAX_CAPTURED_SAMPLES, signature -> allowed(methods, signature));
+            requests.forEach(WarmupSamples::add);
+            log.info("*** krpc - 加载录制请求作为预热样本: {}", requests.size());
+        } catch (Exception e) {
+            log.warn("*** krpc - 录制请求加载失败: {}", captureDir, e);
+        }
+    }
+
+    /**
+     * 方法是否允许预热, 配置项为完整签名(接口名#方法名(参数类型))或接口名#方法名(包括所有重载)
+     */
+    private static boolean allowed(List<String> methods, String signature) {
+        for (String method : methods) {
+            if (signature.equals(method) || (signature.startsWith(method) && signature.charAt(method.length()) == '(')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 样本请求按客户端实际发送的形式准备: 握手后以方法id代替接口名、方法名、参数类型
+     */
+    private List<RpcRequest> prepare(List<RpcRequest> samples) {
+        Map<String, Integer> methodTable = RpcReferenceInvoke.getMethodTable();
+        List<RpcRequest> requests = new ArrayList<>(samples.size());
+        for (RpcRequest sample : samples) {
+            Integer methodId = sample.getSignature() == null ? null : methodTable.get(sample.getSignature());
+            if (methodId == null) {
+                log.warn("*** krpc - 预热样本不是本服务的方法, 忽略: {}.{}", sample.getInterfaceName(), sample.getMethodName());
+                continue;
+            }
+            requests.add(RpcRequest.builder()
+                    .ip(sample.getIp())
+                    .traceId(sample.getTraceId())
+                    .context(sample.getContext())
+                    .methodId(methodId)
+                    .parameters(sample.getParameters())
+                    .build());
+        }
+        return requests;
+    }
+
+    private RpcMessage request(int traceId, RpcRequest rpcRequest) {
+        return RpcMessage.builder()
+                .magicNum(RpcConstants.MAGIC_NUMBER)
+                .version(RpcConstants.VERSION)
+                .messageType(RpcConstants.REQUEST_TYPE)
+                .codec(codec)
+                .compress(compressType)
+                .traceId(traceId)
+                .data(rpcRequest)
+                .build();
+    }
+
+    /**
+     * 收到响应后释放并发许可, 失败数在IO线程上累加, 由预热线程读取
+     */
+    private class WarmupClientHandler extends ChannelInboundHandlerAdapter {
+
+        private final AtomicInteger failed = new AtomicInteger();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (msg instanceof RpcMessage rpcMessage && pending.remove(rpcMessage.getTraceId()) != null) {
+                if (rpcMessage.getData() instanceof RpcResponse<?> response && !Integer.valueOf(1).equals(response.getCode())) {
+                    failed.incrementAndGet();
+                }
+                permits.release();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.mycz.krpc.core.warmup;
+
+import com.mycz.krpc.core.remoting.entity.RpcRequest;
+import com.mycz.krpc.core.utils.MethodSignatureUtil;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 预热样本请求, 须在KrpcApplication启动前登记
+ * 预热时会真实调用服务方法, 只应登记无副作用(只读、幂等)的调用
+ */
+public class WarmupSamples {
+
+    private static final List<RpcRequest> SAMPLES = new CopyOnWriteArrayList<>();
+
+    private WarmupSamples() {
+
+    }
+
+    /**
+     * 登记一个样本调用
+     *
+     * @param interfaceClass 服务接口
+     * @param methodName     方法名
+     * @param paramTypes     参数类型
+     * @param parameters     参数值
+     */
+    public static void add(Class<?> interfaceClass, String methodName, Class<?>[] paramTypes, Object... parameters) {
+        add(RpcRequest.builder()
+                .interfaceName(interfaceClass.getName())
+                .methodName(methodName)
+                .paramTypes(paramTypes)
+                .parameters(parameters)
+                .build());
+    }
+
+    /**
+     * 登记一个样本请求, 如录制下来的线上请求
+     */
+    public static void add(RpcRequest rpcRequest) {
+        if (rpcRequest.getSignature() == null && rpcRequest.getInterfaceName() != null) {
+            rpcRequest.setSignature(MethodSignatureUtil.signature(rpcRequest.getInterfaceName(), rpcRequest.getMethodName(), rpcRequest.getParamTypes()));
+        }
+        SAMPLES.add(rpcRequest);
+    }
+
+    public static List<RpcRequest> get() {
+        return List.copyOf(SAMPLES);
+    }
+
+    public static void clear() {
+        SAMPLES.clear();
+    }
+
+}
@@ -0,0 +1,153 @@
+import com.mycz.krpc.core.remoting.entity.RpcConstants;
+import com.mycz.krpc.core.remoting.entity.RpcMessage;
+import com.mycz.krpc.core.remoting.transport.channel.Transport;
+import com.mycz.krpc.core.remoting.transport.channel.TransportFactory;
+import com.mycz.krpc.core.remoting.transport.codec.RpcMessageDecoder;
+import com.mycz.krpc.core.remoting.transport.codec.RpcMessageEncoder;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 回环网络上nio / epoll / io_uring的对比: 经过krpc编解码的16字节心跳帧往返
+ * 串行: 单连接一问一答, 反映单次往返延迟; 并行: 单连接保持64个在途请求, 反映吞吐
+ */
+public class TransportBenchmark {
+
+    private static final int WARMUP = 50_000;
+    private static final int ITERATIONS = 200_000;
+    private static final int WINDOW = 64;
+
+    public static void main(String[] args) throws Exception {
+        for (String name : new String[]{"nio", "epoll", "io_uring"}) {
+            Transport transport = TransportFactory.getTransport(name);
+            if (!transport.name().equals(name)) {
+                System.out.printf("%-9s unavailable%n", name);
+                continue;
+            }
+            run(transport);
+        }
+    }
+
+    private static void run(Transport transport) throws Exception {
+        EventLoopGroup bossGroup = transport.eventLoopGroup(1, new DefaultThreadFactory("bench-boss"));
+        EventLoopGroup serverGroup = transport.eventLoopGroup(1, new DefaultThreadFactory("bench-server"));
+        EventLoopGroup clientGroup = transport.eventLoopGroup(1, new DefaultThreadFactory("bench-client"));
+        try {
+            ServerBootstrap serverBootstrap = new ServerBootstrap()
+                    .group(bossGroup, serverGroup)
+                    .channel(transport.serverChannelClass())
+                    .childOption(ChannelOption.TCP_NODELAY, true)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline().addLast(new RpcMessageEncoder(0), new RpcMessageDecoder(), new PongHandler());
+                        }
+                    });
+            transport.configure(serverBootstrap, false);
+            Channel server = serverBootstrap.bind("127.0.0.1", 0).sync().channel();
+
+            PingHandler ping = new PingHandler();
+            Bootstrap bootstrap = new Bootstrap()
+                    .group(clientGroup)
+                    .channel(transport.socketChannelClass())
+                    .option(ChannelOption.TCP_NODELAY, true)
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline().addLast(new RpcMessageEncoder(0), new RpcMessageDecoder(), ping);
+                        }
+                    });
+            transport.configure(bootstrap);
+            Channel client = bootstrap.connect((InetSocketAddress) server.localAddress()).sync().channel();
+
+            ping.run(client, WARMUP, 1).get();
+            long begin = System.nanoTime();
+            ping.run(client, ITERATIONS, 1).get();
+            long serial = System.nanoTime() - begin;
+
+            ping.run(client, WARMUP, WINDOW).get();
+            begin = System.nanoTime();
+            ping.run(client, ITERATIONS, WINDOW).get();
+            long pipelined = System.nanoTime() - begin;
+
+            System.out.printf("%-9s serial %6.2f us/rtt   pipelined(%d) %9.0f msg/s%n", transport.name(),
+                    serial / 1000.0 / ITERATIONS, WINDOW, ITERATIONS * 1e9 / pipelined);
+
+            client.close().sync();
+            server.close().sync();
+        } finally {
+            clientGroup.shutdownGracefully().sync();
+            serverGroup.shutdownGracefully().sync();
+            bossGroup.shutdownGracefully().sync();
+        }
+    }
+
+    private static RpcMessage heartbeat(byte messageType) {
+        return RpcMessage.builder()
+                .magicNum(RpcConstants.MAGIC_NUMBER)
+                .version(RpcConstants.VERSION)
+                .messageType(messageType)
+                .codec(RpcConstants.CODEC_KRYO)
+                .compress(RpcConstants.COMPRESS_NONE)
+                .build();
+    }
+
+    private static class PongHandler extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            RpcMessage rpcMessage = (RpcMessage) msg;
+            rpcMessage.setMessageType(RpcConstants.HEARTBEAT_RESPONSE_TYPE);
+            ctx.writeAndFlush(rpcMessage);
+        }
+    }
+
+    /**
+     * 在客户端EventLoop上收到响应后立即发送下一个请求, 不经过业务线程
+     */
+    @ChannelHandler.Sharable
+    private static class PingHandler extends ChannelInboundHandlerAdapter {
+
+        private int remaining;
+        private int received;
+        private int total;
+        private CompletableFuture<Void> done;
+
+        CompletableFuture<Void> run(Channel channel, int total, int window) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            channel.eventLoop().execute(() -> {
+                this.total = total;
+                this.received = 0;
+                this.remaining = total - window;
+                this.done = future;
+                for (int i = 0; i < window; i++) {
+                    channel.write(heartbeat(RpcConstants.HEARTBEAT_REQUEST_TYPE));
+                }
+                channel.flush();
+            });
+            return future;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (++received == total) {
+                done.complete(null);
+            } else if (remaining > 0) {
+                remaining--;
+                ctx.writeAndFlush(heartbeat(RpcConstants.HEARTBEAT_REQUEST_TYPE));
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.mycz.krpc.core.capture;
+
+import com.mycz.krpc.core.remoting.entity.RpcConstants;
+import com.mycz.krpc.core.remoting.entity.RpcMessage;
+import com.mycz.krpc.core.remoting.entity.RpcRequest;
+import com.mycz.krpc.core.remoting.entity.RpcResponse;
+import com.mycz.krpc.core.remoting.transport.codec.RpcMessageEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 录制文件写入和读取: 往返、切换文件、截断的记录、方法表记录、多线程并发写入
+ */
+public class CaptureLogTest {
+
+    private static final String SIGNATURE = "com.example.Demo#hello(java.lang.String)";
+
+    private static final Map<String, Integer> METHOD_TABLE = Map.of(SIGNATURE, 7);
+
+    /**
+     * 帧中存放编号的位置, 紧跟消息头
+     */
+    private static final int ID_INDEX = RpcConstants.HEAD_LENGTH;
+
+    private static final int THREADS = 8;
+
+    private static final int PER_THREAD = 2000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTripRestoresSignatureFromMethodTable() throws Exception {
+        String dir = folder.newFolder().getPath();
+        ByteBuf request = encode(RpcConstants.REQUEST_TYPE, RpcRequest.builder().traceId("t1").methodId(7).parameters(new Object[]{"bob"}).build());
+        ByteBuf response = encode(RpcConstants.RESPONSE_TYPE, RpcResponse.success("hi", "t1"));
+        ByteBuf heartbeat = frame(RpcConstants.HEARTBEAT_REQUEST_TYPE, 0, 100);
+
+        CaptureLog captureLog = new CaptureLog(dir, 64 * 1024, 4, METHOD_TABLE);
+        captureLog.capture(request);
+        captureLog.capture(response);
+        captureLog.capture(heartbeat);
+        captureLog.close();
+        // 录制不改变帧的读位置
+        assertEquals(0, request.readerIndex());
+
+        List<CaptureReader.CapturedFrame> frames = read(dir);
+        assertEquals(1, frames.size());
+        assertArrayEquals(ByteBufUtil.getBytes(request), frames.get(0).getFrame());
+        assertEquals(SIGNATURE, frames.get(0).getSignatures().get(7));
+        assertTrue(frames.get(0).getRun() > 0);
+
+        List<RpcRequest> requests = new CaptureReader(dir).requests(10);
+        assertEquals(1, requests.size());
+        assertEquals(SIGNATURE, requests.get(0).getSignature());
+        assertArrayEquals(new Object[]{"bob"}, requests.get(0).getParameters());
+        assertEquals(0, new CaptureReader(dir).requests(10, signature -> false).size());
+    }
+
+    @Test
+    public void rollsOverAndEverySegmentStartsWithMethodTable() throws Exception {
+        String dir = folder.newFolder().getPath();
+        CaptureLog captureLog = new CaptureLog(dir, 4096, 100, METHOD_TABLE);
+        for (int i = 0; i < 200; i++) {
+            awaitStandby(captureLog);
+            captureLog.capture(frame(RpcConstants.REQUEST_TYPE, i, 100));
+        }
+        captureLog.close();
+
+        assertTrue(CaptureLog.segments(Path.of(dir)).size() > 1);
+        List<CaptureReader.CapturedFrame> frames = read(dir);
+        assertEquals(200, frames.size());
+        for (int i = 0; i < frames.size(); i++) {
+            assertEquals(i, id(frames.get(i)));
+            assertEquals(SIGNATURE, frames.get(i).getSignatures().get(7));
+        }
+    }
+
+    @Test
+    public void keepsOnlyConfiguredSegments() throws Exception {
+        String dir = folder.newFolder().getPath();
+        CaptureLog captureLog = new CaptureLog(dir, 4096, 2, METHOD_TABLE);
+        for (int i = 0; i < 200; i++) {
+            awaitStandby(captureLog);
+            captureLog.capture(frame(RpcConstants.REQUEST_TYPE, i, 100));
+        }
+        captureLog.close();
+
+        assertTrue(CaptureLog.segments(Path.of(dir)).size() <= 2);
+        // 保留的是最新的记录, 且连续
+        List<CaptureReader.CapturedFrame> frames = read(dir);
+        assertEquals(199, id(frames.get(frames.size() - 1)));
+        for (int i = 1; i < frames.size(); i++) {
+            assertEquals(id(frames.get(i - 1)) + 1, id(frames.get(i)));
+        }
+    }
+
+    @Test
+    public void stopsAtUnfinishedRecord() throws Exception {
+        Path file = this.captureTen();
+        // 长度为0表示记录还没写完
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4), offset(file, 5));
+        }
+        assertEquals(5, read(file.getParent().toString()).size());
+    }
+
+    @Test
+    public void stopsAtTruncatedRecord() throws Exception {
+        Path file = this.captureTen();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(offset(file, 8) + 50);
+        }
+        assertEquals(8, read(file.getParent().toString()).size());
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(offset(file, 3) + 6);
+        }
+        assertEquals(3, read(file.getParent().toString()).size());
+    }
+
+    @Test
+    public void concurrentWritersDoNotInterleave() throws Exception {
+        List<CaptureReader.CapturedFrame> frames = this.captureConcurrently(16 * 1024 * 1024);
+        assertEquals(THREADS * PER_THREAD, frames.size());
+    }
+
+    @Test
+    public void concurrentWritersAcrossRollOver() throws Exception {
+        // 下一个文件未准备好时允许丢弃, 读到的记录须完整
+        List<CaptureReader.CapturedFrame> frames = this.captureConcurrently(64 * 1024);
+        assertTrue(frames.size() > 0);
+        assertTrue(frames.size() <= THREADS * PER_THREAD);
+    }
+
+    /**
+     * 多个线程同时录制, 校验读到的每条记录内容完整, 同一线程的记录保持写入顺序
+     */
+    private List<CaptureReader.CapturedFrame> captureConcurrently(int segmentSize) throws Exception {
+        String dir = folder.newFolder().getPath();
+        CaptureLog captureLog = new CaptureLog(dir, segmentSize, 1000, METHOD_TABLE);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            writers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < PER_THREAD; i++) {
+                    ByteBuf frame = frame(RpcConstants.REQUEST_TYPE, thread * PER_THREAD + i, 50 + (i * 37) % 250);
+                    // 消息头之后除编号外都填充为线程号
+                    for (int j = ID_INDEX + 4; j < frame.writerIndex(); j++) {
+                        frame.setByte(j, thread);
+                    }
+                    captureLog.capture(frame);
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        captureLog.close();
+
+        List<CaptureReader.CapturedFrame> frames = read(dir);
+        int[] last = new int[THREADS];
+        Arrays.fill(last, -1);
+        for (CaptureReader.CapturedFrame captured : frames) {
+            int id = id(captured);
+            int thread = id / PER_THREAD;
+            byte[] frame = captured.getFrame();
+            assertEquals(50 + (id % PER_THREAD * 37) % 250, frame.length);
+            for (int j = ID_INDEX + 4; j < frame.length; j++) {
+                assertEquals(thread, frame[j]);
+            }
+            assertTrue(id > last[thread]);
+            last[thread] = id;
+        }
+        return frames;
+    }
+
+    /**
+     * 单个文件中录制10个100字节的帧
+     */
+    private Path captureTen() throws Exception {
+        String dir = folder.newFolder().getPath();
+        CaptureLog captureLog = new CaptureLog(dir, 64 * 1024, 4, METHOD_TABLE);
+        for (int i = 0; i < 10; i++) {
+            captureLog.capture(frame(RpcConstants.REQUEST_TYPE, i, 100));
+        }
+        captureLog.close();
+        List<Path> segments = CaptureLog.segments(Path.of(dir));
+        assertEquals(1, segments.size());
+        assertEquals(10, read(dir).size());
+        return segments.get(0);
+    }
+
+    /**
+     * 第index条100字节帧记录的位置, 文件头和方法表记录之后
+     */
+    private static long offset(Path file, int index) throws Exception {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.read(length, CaptureLog.FILE_HEADER_LENGTH);
+        }
+        int methodTable = length.flip().getInt();
+        return CaptureLog.FILE_HEADER_LENGTH + CaptureLog.RECORD_HEADER_LENGTH + methodTable + (long) index * (CaptureLog.RECORD_HEADER_LENGTH + 100);
+    }
+
+    private static List<CaptureReader.CapturedFrame> read(String dir) throws Exception {
+        List<CaptureReader.CapturedFrame> frames = new ArrayList<>();
+        new CaptureReader(dir).forEach(frames::add);
+        return frames;
+    }
+
+    private static void awaitStandby(CaptureLog captureLog) throws InterruptedException {
+        while (!captureLog.standbyReady()) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static int id(CaptureReader.CapturedFrame frame) {
+        return ByteBuffer.wrap(frame.getFrame()).getInt(ID_INDEX);
+    }
+
+    /**
+     * 构造指定长度的帧, 只填写消息头中的魔数和消息类型, 消息头之后是编号
+     */
+    private static ByteBuf frame(byte messageType, int id, int length) {
+        ByteBuf frame = Unpooled.buffer(length);
+        frame.writeBytes(RpcConstants.MAGIC_NUMBER);
+        frame.writeByte(RpcConstants.VERSION);
+        frame.writeByte(messageType);
+        frame.writeZero(RpcConstants.HEAD_LENGTH - 6);
+        frame.writeInt(id);
+        frame.writeZero(length - frame.writerIndex());
+        return frame;
+    }
+
+    private static ByteBuf encode(byte messageType, Object data) {
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcMessageEncoder(0));
+        channel.writeOutbound(RpcMessage.builder()
+                .magicNum(RpcConstants.MAGIC_NUMBER)
+                .version(RpcConstants.VERSION)
+                .messageType(messageType)
+                .codec(RpcConstants.CODEC_KRYO)
+                .compress(RpcConstants.COMPRESS_NONE)
+                .traceId(1)
+                .data(data)
+                .build());
+        ByteBuf frame = channel.readOutbound();
+        channel.finishAndReleaseAll();
+        return frame;
+    }
+
+}
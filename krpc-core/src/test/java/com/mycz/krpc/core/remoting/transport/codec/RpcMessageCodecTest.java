@@ -0,0 +1,108 @@
+package com.mycz.krpc.core.remoting.transport.codec;
+
+import com.mycz.krpc.core.remoting.entity.RpcConstants;
+import com.mycz.krpc.core.remoting.entity.RpcMessage;
+import com.mycz.krpc.core.remoting.entity.RpcResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * 消息编解码往返, 覆盖各压缩方式和压缩阈值
+ */
+public class RpcMessageCodecTest {
+
+    private static final int THRESHOLD = 1024;
+
+    private static final byte[] COMPRESSES = {RpcConstants.COMPRESS_NONE, RpcConstants.COMPRESS_GZIP, RpcConstants.COMPRESS_LZ4, RpcConstants.COMPRESS_ZSTD};
+
+    /**
+     * 消息头中compress字节的位置
+     */
+    private static final int COMPRESS_INDEX = 7;
+
+    @Test
+    public void belowThresholdIsSentUncompressed() {
+        for (byte compress : COMPRESSES) {
+            ByteBuf frame = encode(new RpcMessageEncoder(THRESHOLD), compress, body(100));
+            assertEquals(RpcConstants.COMPRESS_NONE, frame.getByte(COMPRESS_INDEX));
+            assertEquals(body(100), decode(frame));
+        }
+    }
+
+    @Test
+    public void aboveThresholdIsCompressed() {
+        for (byte compress : COMPRESSES) {
+            ByteBuf frame = encode(new RpcMessageEncoder(THRESHOLD), compress, body(64 * 1024));
+            assertEquals(compress, frame.getByte(COMPRESS_INDEX));
+            assertEquals(body(64 * 1024), decode(frame));
+        }
+    }
+
+    @Test
+    public void zeroThresholdAlwaysCompresses() {
+        for (byte compress : COMPRESSES) {
+            ByteBuf frame = encode(new RpcMessageEncoder(0), compress, body(10));
+            assertEquals(compress, frame.getByte(COMPRESS_INDEX));
+            assertEquals(body(10), decode(frame));
+        }
+    }
+
+    @Test
+    public void encoderReusesBufferAcrossMessages() {
+        for (byte compress : COMPRESSES) {
+            EmbeddedChannel channel = new EmbeddedChannel(new RpcMessageEncoder(0));
+            for (int size : new int[]{10, 2 * 1024 * 1024, 100, 5000}) {
+                channel.writeOutbound(message(compress, body(size)));
+                ByteBuf frame = channel.readOutbound();
+                assertEquals(compress, frame.getByte(COMPRESS_INDEX));
+                assertEquals(body(size), decode(frame));
+            }
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    private static ByteBuf encode(RpcMessageEncoder encoder, byte compress, String data) {
+        EmbeddedChannel channel = new EmbeddedChannel(encoder);
+        channel.writeOutbound(message(compress, data));
+        ByteBuf frame = channel.readOutbound();
+        channel.finishAndReleaseAll();
+        return frame;
+    }
+
+    private static Object decode(ByteBuf frame) {
+        EmbeddedChannel channel = new EmbeddedChannel(new RpcMessageDecoder());
+        channel.writeInbound(frame);
+        RpcMessage rpcMessage = channel.readInbound();
+        channel.finishAndReleaseAll();
+        assertNotNull(rpcMessage.getData());
+        return ((RpcResponse<?>) rpcMessage.getData()).getData();
+    }
+
+    private static RpcMessage message(byte compress, String data) {
+        return RpcMessage.builder()
+                .magicNum(RpcConstants.MAGIC_NUMBER)
+                .version(RpcConstants.VERSION)
+                .messageType(RpcConstants.RESPONSE_TYPE)
+                .codec(RpcConstants.CODEC_KRYO)
+                .compress(compress)
+                .traceId(1)
+                .data(RpcResponse.success(data, "trace"))
+                .build();
+    }
+
+    /**
+     * 可压缩的消息内容
+     */
+    private static String body(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length) {
+            sb.append("krpc-").append(sb.length() % 97).append(';');
+        }
+        return sb.substring(0, length);
+    }
+
+}
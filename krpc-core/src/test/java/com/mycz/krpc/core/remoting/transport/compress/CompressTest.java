@@ -0,0 +1,105 @@
+package com.mycz.krpc.core.remoting.transport.compress;
+
+import com.mycz.krpc.core.remoting.entity.RpcConstants;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * 各压缩方式的字节数组、流、ByteBuf接口输出格式一致, 堆内存和直接内存都能往返
+ */
+public class CompressTest {
+
+    private static final byte[] COMPRESSES = {RpcConstants.COMPRESS_NONE, RpcConstants.COMPRESS_GZIP, RpcConstants.COMPRESS_LZ4, RpcConstants.COMPRESS_ZSTD};
+
+    @Test
+    public void roundTripAcrossApis() throws IOException {
+        for (byte type : COMPRESSES) {
+            Compress compress = CompressFactory.getCompress(type);
+            for (byte[] data : new byte[][]{new byte[0], text(100), text(300 * 1024), random(50 * 1024)}) {
+                byte[] compressed = compress.compress(data);
+                assertArrayEquals(data, compress.decompress(compressed));
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (OutputStream os = compress.compress(out)) {
+                    os.write(data);
+                }
+                assertArrayEquals(compressed, out.toByteArray());
+                try (InputStream is = compress.decompress(new ByteArrayInputStream(compressed))) {
+                    assertArrayEquals(data, is.readAllBytes());
+                }
+
+                for (boolean direct : new boolean[]{true, false}) {
+                    ByteBuf src = direct ? Unpooled.directBuffer() : Unpooled.buffer();
+                    ByteBuf dst = direct ? Unpooled.directBuffer() : Unpooled.buffer();
+                    ByteBuf result = direct ? Unpooled.directBuffer() : Unpooled.buffer();
+                    src.writeBytes(data);
+                    compress.compress(src, dst);
+                    compress.decompress(dst, result);
+                    assertArrayEquals(data, ByteBufUtil.getBytes(result));
+                    src.release();
+                    dst.release();
+                    result.release();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void gzipCompatibleWithJdk() throws IOException {
+        Compress gzip = CompressFactory.getCompress(RpcConstants.COMPRESS_GZIP);
+        byte[] data = text(100 * 1024);
+        try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(gzip.compress(data)))) {
+            assertArrayEquals(data, is.readAllBytes());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream os = new GZIPOutputStream(out)) {
+            os.write(data);
+        }
+        assertArrayEquals(data, gzip.decompress(out.toByteArray()));
+    }
+
+    @Test
+    public void corruptDataIsRejected() {
+        for (byte type : new byte[]{RpcConstants.COMPRESS_GZIP, RpcConstants.COMPRESS_LZ4, RpcConstants.COMPRESS_ZSTD}) {
+            Compress compress = CompressFactory.getCompress(type);
+            byte[] compressed = compress.compress(text(10 * 1024));
+            byte[] truncated = new byte[compressed.length / 2];
+            System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+            try {
+                compress.decompress(truncated);
+                fail("truncated data accepted: " + type);
+            } catch (RuntimeException e) {
+                // 预期
+            }
+        }
+    }
+
+    private static byte[] text(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + (i * 7 % 13));
+        }
+        return bytes;
+    }
+
+    private static byte[] random(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+}
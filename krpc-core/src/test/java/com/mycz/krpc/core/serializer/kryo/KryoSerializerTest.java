@@ -0,0 +1,131 @@
+package com.mycz.krpc.core.serializer.kryo;
+
+import com.mycz.krpc.core.remoting.entity.RpcRequest;
+import com.mycz.krpc.core.serializer.Serializer;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * kryo对象池序列化往返
+ */
+public class KryoSerializerTest {
+
+    @AfterClass
+    public static void clearRegistration() {
+        KryoSerializer.registerClasses(List.of());
+    }
+
+    @Test
+    public void roundTripBytes() {
+        for (Serializer serializer : List.of(new KryoSerializer(), new KryoUnsafeSerializer())) {
+            RpcRequest request = request();
+            RpcRequest result = serializer.deserialize(serializer.serialize(request), RpcRequest.class);
+            assertRequest(request, result);
+        }
+    }
+
+    @Test
+    public void roundTripStream() {
+        for (Serializer serializer : List.of(new KryoSerializer(), new KryoUnsafeSerializer())) {
+            // 多次往返, 覆盖对象池中实例的复用
+            for (int i = 0; i < 100; i++) {
+                RpcRequest request = request();
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                serializer.serialize(request, out);
+                RpcRequest result = serializer.deserialize(new ByteArrayInputStream(out.toByteArray()), RpcRequest.class);
+                assertRequest(request, result);
+            }
+        }
+    }
+
+    @Test
+    public void roundTripNull() {
+        KryoSerializer serializer = new KryoSerializer();
+        assertNull(serializer.deserialize(serializer.serialize(null), RpcRequest.class));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(null, out);
+        assertNull(serializer.deserialize(new ByteArrayInputStream(out.toByteArray()), RpcRequest.class));
+    }
+
+    @Test
+    public void roundTripLarge() {
+        // 超过流式缓冲区大小
+        KryoSerializer serializer = new KryoSerializer();
+        byte[] payload = new byte[64 * 1024];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        assertArrayEquals(payload, serializer.deserialize(serializer.serialize(payload), byte[].class));
+    }
+
+    @Test
+    public void roundTripWithRegistration() {
+        KryoSerializer.registerClasses(List.of(Dto.class));
+        KryoSerializer serializer = new KryoSerializer();
+        RpcRequest request = request();
+        request.setParameters(new Object[]{new Dto("a", 1), 2});
+        RpcRequest result = serializer.deserialize(serializer.serialize(request), RpcRequest.class);
+        assertRequest(request, result);
+        assertEquals(new Dto("a", 1), result.getParameters()[0]);
+    }
+
+    private static RpcRequest request() {
+        Map<String, Object> context = new HashMap<>();
+        context.put("k", "v");
+        return RpcRequest.builder()
+                .traceId("1234567890123456")
+                .version("1.0")
+                .serviceName("user-service")
+                .interfaceName("com.mycz.api.UserService")
+                .methodName("list")
+                .paramTypes(new Class<?>[]{Integer.class, Integer.class})
+                .parameters(new Object[]{1, 20})
+                .context(context)
+                .build();
+    }
+
+    private static void assertRequest(RpcRequest expected, RpcRequest actual) {
+        assertEquals(expected.getTraceId(), actual.getTraceId());
+        assertEquals(expected.getServiceName(), actual.getServiceName());
+        assertEquals(expected.getInterfaceName(), actual.getInterfaceName());
+        assertEquals(expected.getMethodName(), actual.getMethodName());
+        assertArrayEquals(expected.getParamTypes(), actual.getParamTypes());
+        assertArrayEquals(expected.getParameters(), actual.getParameters());
+        assertEquals(expected.getContext(), actual.getContext());
+    }
+
+    public static class Dto {
+
+        private String name;
+
+        private int value;
+
+        public Dto(String name, int value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Dto dto && value == dto.value && Objects.equals(name, dto.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, value);
+        }
+    }
+
+}
@@ -1,17 +1,22 @@
 package com.mycz.krpc.stater.config;
 
 import com.mycz.krpc.core.annotation.KrpcReference;
+import com.mycz.krpc.core.factory.RpcMethodMetadata;
 import com.mycz.krpc.core.factory.RpcReferenceProxy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.FactoryBean;
+import org.springframework.cglib.proxy.Callback;
+import org.springframework.cglib.proxy.Enhancer;
+import org.springframework.cglib.proxy.InvocationHandler;
+import org.springframework.cglib.proxy.NoOp;
 
-import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeoutException;
 
 @Slf4j
-public class KrpcReferenceFactoryBean implements FactoryBean<Object>, InvocationHandler {
+public class KrpcReferenceFactoryBean implements FactoryBean<Object> {
 
     //要代理的对象
     private final Class<?> clazz;
@@ -25,41 +30,71 @@ public class KrpcReferenceFactoryBean implements FactoryBean<Object>, Invocation
         return FactoryBean.super.isSingleton();
     }
 
+    /**
+     * 为接口生成代理类, 服务名、接口名及每个方法的元数据在生成时确定, 调用时不再做反射和注解查找
+     * 使用spring内置的cglib, 以接口为上下文类定义代理类, 高版本jdk无需额外开放模块
+     */
     @Override
-    public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
-        // 获取注解信息
-        KrpcReference annotation = null;
-        Class<?>[] interfaces = proxy.getClass().getInterfaces();
-        for (Class<?> anInterface : interfaces) {
-            if (anInterface.isAnnotationPresent(KrpcReference.class)) {
-                annotation = anInterface.getAnnotation(KrpcReference.class);
-                break;
-            }
-        }
-
+    public Object getObject() {
+        KrpcReference annotation = clazz.getAnnotation(KrpcReference.class);
         String serviceName = annotation == null ? "" : annotation.serviceName();
 
-        Object obj;
-        try {
-            obj = RpcReferenceProxy.proxy(serviceName, clazz.getName(), method.getName(), method.getParameterTypes(), args);
-        } catch (TimeoutException e) {
-            throw new Exception("服务调用请求超时");
-        } catch (Exception e) {
-            log.error("服务调用异常", e);
-            throw new Exception("服务调用异常");
+        // 0号回调留给Object自身的方法, 其余每个接口方法一个回调
+        Method[] methods = clazz.getMethods();
+        Callback[] callbacks = new Callback[methods.length + 1];
+        callbacks[0] = NoOp.INSTANCE;
+        Map<Method, Integer> callbackIndex = new HashMap<>();
+        for (int i = 0; i < methods.length; i++) {
+            Method method = methods[i];
+            callbacks[i + 1] = new ReferenceMethodHandler(new RpcMethodMetadata(serviceName, clazz, method));
+            callbackIndex.put(method, i + 1);
         }
 
-        // 代理
-        return obj;
-    }
-
-    @Override
-    public Object getObject() {
-        return Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class[]{clazz}, this);
+        Enhancer enhancer = new Enhancer();
+        enhancer.setSuperclass(clazz);
+        enhancer.setClassLoader(clazz.getClassLoader());
+        enhancer.setUseCache(false);
+        enhancer.setUseFactory(false);
+        enhancer.setCallbackFilter(method -> callbackIndex.getOrDefault(method, 0));
+        enhancer.setCallbacks(callbacks);
+        return enhancer.create();
     }
 
     @Override
     public Class<?> getObjectType() {
         return clazz;
     }
+
+    /**
+     * 单个接口方法的调用处理
+     */
+    private static class ReferenceMethodHandler implements InvocationHandler {
+
+        private final RpcMethodMetadata metadata;
+
+        ReferenceMethodHandler(RpcMethodMetadata metadata) {
+            this.metadata = metadata;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+            // 异步方法直接返回在途请求的future, 异常通过future传递
+            if (metadata.isAsync()) {
+                return RpcReferenceProxy.proxyAsync(metadata, args);
+            }
+
+            Object obj;
+            try {
+                obj = RpcReferenceProxy.proxy(metadata, args);
+            } catch (TimeoutException e) {
+                throw new Exception("服务调用请求超时");
+            } catch (Exception e) {
+                log.error("服务调用异常", e);
+                throw new Exception("服务调用异常");
+            }
+
+            // 代理
+            return obj;
+        }
+    }
 }
@@ -17,6 +17,7 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
 
@@ -33,7 +34,11 @@ import java.util.List;
         RpcProperties.Registry.class,
         RpcProperties.Config.class,
         RpcProperties.Vault.class,
-        RpcProperties.Document.class
+        RpcProperties.Document.class,
+        RpcProperties.Codec.class,
+        RpcProperties.Server.class,
+        RpcProperties.Client.class,
+        RpcProperties.Warmup.class
 })
 @Configuration(proxyBeanMethods = false)
 public class RpcAutoConfiguration {
@@ -43,6 +48,8 @@ public class RpcAutoConfiguration {
 
     private ConsulClient client;
 
+    private KrpcApplication krpcApplication;
+
 
     @EventListener
     public void apiReport(ContextRefreshedEvent event) {
@@ -111,14 +118,77 @@ public class RpcAutoConfiguration {
         config.setName(rpcProperties.getName());
         config.setHost(rpcProperties.getHost());
         config.setPort(rpcProperties.getPort());
+        config.setTransport(rpcProperties.getTransport());
 
         RpcConfig.Registry registry = new RpcConfig.Registry();
         registry.setEnable(rpcProperties.getRegistry().getEnable());
         registry.setAddress(rpcProperties.getRegistry().getAddress());
         registry.setServiceIP(rpcProperties.getRegistry().getServiceIP());
+        registry.setSnapshot(rpcProperties.getRegistry().getSnapshot());
+        registry.setSnapshotFile(rpcProperties.getRegistry().getSnapshotFile());
+        registry.setInitialWeight(rpcProperties.getRegistry().getInitialWeight());
+        registry.setWarmupPeriod(rpcProperties.getRegistry().getWarmupPeriod());
         config.setRegistry(registry);
 
-        new KrpcApplication(config).start();
+        if (rpcProperties.getCodec() != null) {
+            RpcConfig.Codec codec = new RpcConfig.Codec();
+            codec.setSerializer(rpcProperties.getCodec().getSerializer());
+            codec.setServiceSerializers(rpcProperties.getCodec().getServiceSerializers());
+            codec.setKryoRegistration(rpcProperties.getCodec().getKryoRegistration());
+            codec.setKryoClasses(rpcProperties.getCodec().getKryoClasses());
+            codec.setCompress(rpcProperties.getCodec().getCompress());
+            codec.setCompressThreshold(rpcProperties.getCodec().getCompressThreshold());
+            config.setCodec(codec);
+        }
+
+        if (rpcProperties.getServer() != null) {
+            RpcConfig.Server server = new RpcConfig.Server();
+            server.setDispatch(rpcProperties.getServer().getDispatch());
+            server.setThreads(rpcProperties.getServer().getThreads());
+            server.setMaxConcurrency(rpcProperties.getServer().getMaxConcurrency());
+            server.setQueueSize(rpcProperties.getServer().getQueueSize());
+            server.setCapture(rpcProperties.getServer().getCapture());
+            server.setCaptureDir(rpcProperties.getServer().getCaptureDir());
+            server.setCaptureSegmentSize(rpcProperties.getServer().getCaptureSegmentSize());
+            server.setCaptureSegments(rpcProperties.getServer().getCaptureSegments());
+            server.setShutdownTimeout(rpcProperties.getServer().getShutdownTimeout());
+            server.setReusePort(rpcProperties.getServer().getReusePort());
+            config.setServer(server);
+        }
+
+        if (rpcProperties.getClient() != null) {
+            RpcConfig.Client client = new RpcConfig.Client();
+            client.setMaxConnections(rpcProperties.getClient().getMaxConnections());
+            client.setMaxPendingPerConnection(rpcProperties.getClient().getMaxPendingPerConnection());
+            client.setTimeout(rpcProperties.getClient().getTimeout());
+            client.setLoadBalance(rpcProperties.getClient().getLoadBalance());
+            client.setServiceLoadBalances(rpcProperties.getClient().getServiceLoadBalances());
+            config.setClient(client);
+        }
+
+        if (rpcProperties.getWarmup() != null) {
+            RpcConfig.Warmup warmup = new RpcConfig.Warmup();
+            warmup.setEnable(rpcProperties.getWarmup().getEnable());
+            warmup.setIterations(rpcProperties.getWarmup().getIterations());
+            warmup.setDuration(rpcProperties.getWarmup().getDuration());
+            warmup.setCaptureDir(rpcProperties.getWarmup().getCaptureDir());
+            warmup.setMethods(rpcProperties.getWarmup().getMethods());
+            config.setWarmup(warmup);
+        }
+
+        krpcApplication = new KrpcApplication(config);
+        // 停机由容器关闭事件触发, 不注册进程退出钩子, 避免与Spring的钩子并发停机
+        krpcApplication.start(false);
+    }
+
+    /**
+     * 容器关闭时先排空rpc请求, 再销毁业务bean
+     */
+    @EventListener
+    public void handleContextClosed(ContextClosedEvent event) {
+        if (krpcApplication != null) {
+            krpcApplication.stop();
+        }
     }
 
     private void processMapper(RequestMapping mapping, String clazz, Method method) {
@@ -7,6 +7,8 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
 
 @Getter
 @Setter
@@ -18,6 +20,8 @@ public class RpcProperties {
     private String host;
     // 端口
     private Integer port;
+    // 网络传输 auto | nio | epoll | io_uring
+    private String transport;
     // 注册中心
     private Registry registry;
     // 配置中心
@@ -26,6 +30,14 @@ public class RpcProperties {
     private Vault vault;
     // document
     private Document document;
+    // 编解码
+    private Codec codec;
+    // 服务端
+    private Server server;
+    // 客户端
+    private Client client;
+    // 启动预热
+    private Warmup warmup;
 
 
     /**
@@ -37,6 +49,10 @@ public class RpcProperties {
         private Boolean enable;
         private String address; // 注册中心的地址
         private String serviceIP; // 服务访问地址, 如需公网访问时可配置此项
+        private Boolean snapshot; // 是否把服务发现结果保存到本地快照, 默认开启
+        private String snapshotFile; // 快照文件路径, 默认 krpc-discovery-{name}.snapshot
+        private Integer initialWeight; // 注册时的初始权重, 默认10; round-robin、least-outstanding负载均衡不考虑权重
+        private Integer warmupPeriod; // 权重从初始值升到100的时长(毫秒), 默认60000
     }
 
     /**
@@ -71,4 +87,62 @@ public class RpcProperties {
         private String url;
     }
 
+    /**
+     * 编解码
+     */
+    @Data
+    @ConfigurationProperties("krpc.codec")
+    public static class Codec {
+        private String serializer; // 默认序列化方式 kryo | kryo-unsafe
+        private Map<String, String> serviceSerializers; // 按服务名指定序列化方式
+        private Boolean kryoRegistration; // 是否预注册kryo类, 开启后所有节点须使用相同配置
+        private List<String> kryoClasses; // 额外预注册的类(全限定名), 顺序决定注册id
+        private String compress; // 压缩方式 none | gzip | lz4 | zstd
+        private Integer compressThreshold; // 消息体小于该字节数时不压缩, 0表示总是压缩
+    }
+
+    /**
+     * 服务端
+     */
+    @Data
+    @ConfigurationProperties("krpc.server")
+    public static class Server {
+        private String dispatch; // 业务方法执行方式 io | pool | virtual
+        private Integer threads; // pool模式线程数
+        private Integer maxConcurrency; // virtual模式同时执行的请求数上限
+        private Integer queueSize; // 排队上限
+        private Boolean capture; // 是否录制收到的请求帧, 默认关闭
+        private String captureDir; // 录制目录, 默认krpc-capture
+        private Integer captureSegmentSize; // 单个录制文件大小(MB), 默认64, 最大1024
+        private Integer captureSegments; // 保留的录制文件个数, 默认4
+        private Integer shutdownTimeout; // 停机时等待在途请求的最长时间(毫秒), 默认10000
+        private Boolean reusePort; // 是否开启SO_REUSEPORT(仅epoll/io_uring), 默认关闭
+    }
+
+    /**
+     * 客户端
+     */
+    @Data
+    @ConfigurationProperties("krpc.client")
+    public static class Client {
+        private Integer maxConnections; // 每个服务地址的最大连接数
+        private Integer maxPendingPerConnection; // 单条连接在途请求数达到该值时新建连接
+        private Integer timeout; // 请求超时时间(毫秒)
+        private String loadBalance; // 默认负载均衡 random | round-robin | least-outstanding | p2c-ewma | ring-hash
+        private Map<String, String> serviceLoadBalances; // 按服务名指定负载均衡
+    }
+
+    /**
+     * 启动预热
+     */
+    @Data
+    @ConfigurationProperties("krpc.warmup")
+    public static class Warmup {
+        private Boolean enable; // 是否预热, 默认开启
+        private Integer iterations; // 预热请求数上限, 默认10000
+        private Integer duration; // 预热时长上限(毫秒), 默认10000
+        private String captureDir; // 录制目录, 配置后加载录制的请求作为预热样本
+        private List<String> methods; // 允许用录制请求预热的方法(须只读或幂等), 接口名#方法名 或完整签名; 默认不加载录制请求
+    }
+
 }